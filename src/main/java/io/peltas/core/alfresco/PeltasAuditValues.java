@@ -0,0 +1,168 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.alfresco;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Rebuilds the audit values of an entry from the Alfresco property tables:
+ * the rows of <code>alf_prop_link</code> of the entry values root, each one
+ * being a value with its key contained in the container at
+ * <code>contained_in</code>, the root map being at index 0. The values are
+ * decoded from <code>alf_prop_value</code> to their actual type.
+ */
+public class PeltasAuditValues {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PeltasAuditValues.class);
+
+	// alf_prop_value.persisted_type
+	public static final int PERSISTED_NULL = 0;
+	public static final int PERSISTED_LONG = 1;
+	public static final int PERSISTED_DOUBLE = 2;
+	public static final int PERSISTED_STRING = 3;
+	public static final int PERSISTED_SERIALIZABLE = 4;
+	public static final int PERSISTED_CONSTRUCTABLE = 5;
+	public static final int PERSISTED_ENUM = 6;
+
+	// only JDK types are deserialized
+	private static final ObjectInputFilter SERIALIZABLE_FILTER = ObjectInputFilter.Config
+			.createFilter("java.**;!*");
+
+	private final Map<Long, Object> containers = new HashMap<>();
+
+	private Map<String, Object> values = new LinkedHashMap<>();
+
+	/**
+	 * adds a link row, in the order of <code>prop_index</code>
+	 */
+	@SuppressWarnings("unchecked")
+	public void add(long index, long containedIn, Object key, Object value) {
+		if (value instanceof Map || value instanceof Collection) {
+			containers.put(index, value);
+		}
+
+		if (index == 0) {
+			if (value instanceof Map) {
+				values = (Map<String, Object>) value;
+			}
+			return;
+		}
+
+		Object container = containers.get(containedIn);
+		if (container instanceof Map) {
+			((Map<Object, Object>) container).put(key, value);
+		} else if (container instanceof Collection) {
+			((Collection<Object>) container).add(value);
+		} else {
+			LOGGER.warn("add() container {} of property {} not found", containedIn, index);
+		}
+	}
+
+	public Map<String, Object> getValues() {
+		return values;
+	}
+
+	/**
+	 * @return the value of an <code>alf_prop_value</code> row of the given
+	 *         <code>alf_prop_class.java_class_name</code>, an empty map or list
+	 *         for containers, whose content is added with
+	 *         {@link #add(long, long, Object, Object)}
+	 */
+	public static Object decode(String javaClassName, int persistedType, Long longValue, String stringValue,
+			Double doubleValue, byte[] serializableValue) {
+		switch (persistedType) {
+		case PERSISTED_NULL:
+			return null;
+		case PERSISTED_LONG:
+			return decodeLong(javaClassName, longValue);
+		case PERSISTED_DOUBLE:
+			if (doubleValue != null && Float.class.getName().equals(javaClassName)) {
+				return doubleValue.floatValue();
+			}
+			return doubleValue;
+		case PERSISTED_STRING:
+		case PERSISTED_ENUM:
+			return stringValue;
+		case PERSISTED_SERIALIZABLE:
+			return deserialize(serializableValue);
+		case PERSISTED_CONSTRUCTABLE:
+			return construct(javaClassName);
+		default:
+			throw new PeltasException("unsupported persisted type " + persistedType + " of " + javaClassName);
+		}
+	}
+
+	private static Object decodeLong(String javaClassName, Long longValue) {
+		if (longValue == null) {
+			return null;
+		}
+
+		if (Boolean.class.getName().equals(javaClassName)) {
+			return longValue != 0;
+		} else if (Date.class.getName().equals(javaClassName)) {
+			return new Date(longValue);
+		} else if (Integer.class.getName().equals(javaClassName)) {
+			return longValue.intValue();
+		} else if (Short.class.getName().equals(javaClassName)) {
+			return longValue.shortValue();
+		} else if (Byte.class.getName().equals(javaClassName)) {
+			return longValue.byteValue();
+		}
+		return longValue;
+	}
+
+	private static Object construct(String javaClassName) {
+		Class<?> type = null;
+		try {
+			type = ClassUtils.forName(javaClassName, PeltasAuditValues.class.getClassLoader());
+		} catch (ClassNotFoundException | LinkageError e) {
+			LOGGER.trace("construct() class {} not found", javaClassName);
+		}
+
+		if (type != null ? Map.class.isAssignableFrom(type) : javaClassName.endsWith("Map")) {
+			return new LinkedHashMap<>();
+		}
+		return new ArrayList<>();
+	}
+
+	private static Object deserialize(byte[] serializableValue) {
+		if (serializableValue == null) {
+			return null;
+		}
+
+		try (ObjectInputStream is = new ObjectInputStream(new ByteArrayInputStream(serializableValue))) {
+			is.setObjectInputFilter(SERIALIZABLE_FILTER);
+			return is.readObject();
+		} catch (ClassNotFoundException | IOException e) {
+			// Alfresco types (MLText, ContentData, ...) are not read here
+			LOGGER.debug("deserialize() value not deserializable: {}", e.getMessage());
+			return null;
+		}
+	}
+}
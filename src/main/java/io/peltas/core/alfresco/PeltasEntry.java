@@ -18,9 +18,11 @@ package io.peltas.core.alfresco;
 
 import java.io.Serializable;
 import java.sql.Timestamp;
+import java.util.HashMap;
 import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 @JsonSerialize
@@ -41,6 +43,10 @@ public class PeltasEntry implements Serializable {
 	@JsonAlias({ "values" })
 	private Map<String, Object> values;
 
+	// audit values given as map strings, parsed on their first nested lookup
+	@JsonIgnore
+	private transient Map<String, Map<String, Object>> parsedValues;
+
 	public String getUser() {
 		return user;
 	}
@@ -55,6 +61,34 @@ public class PeltasEntry implements Serializable {
 
 	public void setValues(Map<String, Object> values) {
 		this.values = values;
+		this.parsedValues = null;
+	}
+
+	/**
+	 * @return the audit value of the path as a map: map values are returned as
+	 *         they are, map strings (<code>{key=value, ...}</code>) are parsed
+	 *         lazily up to the keys that are read and kept for the next lookups,
+	 *         any other value returns null
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<String, Object> getValueAsMap(String path) {
+		final Object value = values.get(path);
+		if (value instanceof Map) {
+			return (Map<String, Object>) value;
+		}
+
+		if (value instanceof String && ((String) value).startsWith("{")) {
+			if (parsedValues == null) {
+				parsedValues = new HashMap<>();
+			}
+			Map<String, Object> parsed = parsedValues.get(path);
+			if (parsed == null) {
+				parsed = StringToMapUtil.lazyStringToMap((String) value, ',');
+				parsedValues.put(path, parsed);
+			}
+			return parsed;
+		}
+		return null;
 	}
 
 	public String getId() {
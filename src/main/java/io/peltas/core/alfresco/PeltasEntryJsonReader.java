@@ -0,0 +1,115 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.alfresco;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Reads the audit entries of an audit query response one at a time, without
+ * binding the whole response. The entries are taken from the first
+ * <code>entries</code> array found, either as they are (audit web script) or
+ * wrapped in an <code>entry</code> field (REST API <code>list.entries</code>).
+ */
+public class PeltasEntryJsonReader implements Closeable {
+
+	private static final String ENTRIES = "entries";
+	private static final String ENTRY = "entry";
+
+	private final JsonParser parser;
+	private final ObjectReader reader;
+
+	private boolean inEntries = false;
+	private boolean done = false;
+
+	public PeltasEntryJsonReader(JsonParser parser, ObjectMapper objectMapper) {
+		this.parser = parser;
+		this.reader = objectMapper.readerFor(PeltasEntry.class);
+	}
+
+	/**
+	 * @return the next audit entry, null once all of them are read
+	 */
+	public PeltasEntry next() throws IOException {
+		if (done) {
+			return null;
+		}
+
+		if (!inEntries) {
+			if (!seekEntries()) {
+				done = true;
+				return null;
+			}
+			inEntries = true;
+		}
+
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			done = true;
+			return null;
+		}
+		return readEntry();
+	}
+
+	private boolean seekEntries() throws IOException {
+		JsonToken token;
+		while ((token = parser.nextToken()) != null) {
+			if (token == JsonToken.FIELD_NAME && ENTRIES.equals(parser.getCurrentName())) {
+				if (parser.nextToken() == JsonToken.START_ARRAY) {
+					return true;
+				}
+				parser.skipChildren();
+			}
+		}
+		return false;
+	}
+
+	private PeltasEntry readEntry() throws IOException {
+		JsonToken token = parser.nextToken();
+		if (token == JsonToken.END_OBJECT) {
+			return new PeltasEntry();
+		}
+
+		if (ENTRY.equals(parser.getCurrentName())) {
+			if (parser.nextToken() == JsonToken.START_OBJECT) {
+				PeltasEntry entry = reader.readValue(parser);
+				// skip the remaining fields of the wrapper
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					parser.nextToken();
+					parser.skipChildren();
+				}
+				return entry;
+			}
+
+			parser.skipChildren();
+			if (parser.nextToken() == JsonToken.END_OBJECT) {
+				return new PeltasEntry();
+			}
+		}
+
+		// the entry is read starting from its first field
+		return reader.readValue(parser);
+	}
+
+	@Override
+	public void close() throws IOException {
+		parser.close();
+	}
+}
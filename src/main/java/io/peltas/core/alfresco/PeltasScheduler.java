@@ -16,6 +16,9 @@
 
 package io.peltas.core.alfresco;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.ExitStatus;
@@ -23,9 +26,18 @@ import org.springframework.batch.core.Job;
 import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.launch.JobLauncher;
 import org.springframework.scheduling.annotation.Scheduled;
 
+/**
+ * Launches the job every <code>peltas.scheduler.fixedDelay</code>. With a
+ * {@link #setFullPageSize(int) full page size} the job is relaunched right away
+ * as long as its runs read full pages, to drain a backlog without waiting. With
+ * a {@link #setMaxDelay(long) max delay} the poll interval is doubled after
+ * every run reading nothing, up to that delay, and reset by the next run reading
+ * entries.
+ */
 public class PeltasScheduler {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(PeltasScheduler.class);
@@ -33,6 +45,18 @@ public class PeltasScheduler {
 	private final JobLauncher jobLauncher;
 	private final Job job;
 
+	private long delay;
+	private long maxDelay;
+	private int fullPageSize;
+
+	private volatile long pollInterval;
+	private volatile int lastReadCount;
+	private volatile int skippedTicks;
+	private LongSupplier backlogEstimator;
+
+	// the last auditId, a drained backlog launches several jobs per millisecond
+	private final AtomicLong lastJobId = new AtomicLong();
+
 	public PeltasScheduler(JobLauncher jobLauncher, Job job) {
 		this.jobLauncher = jobLauncher;
 		this.job = job;
@@ -40,8 +64,30 @@ public class PeltasScheduler {
 
 	@Scheduled(fixedDelayString = "${peltas.scheduler.fixedDelay}")
 	public void alfrescoAuditTask() throws Exception {
+		if (skippedTicks > 0) {
+			// backing off
+			skippedTicks--;
+			return;
+		}
 
-		Long jobId = System.currentTimeMillis();
+		int readCount = runJob();
+		while (fullPageSize > 0 && readCount >= fullPageSize) {
+			LOGGER.debug("alfrescoAuditTask() full page of {} entries read, draining", readCount);
+			readCount = runJob();
+		}
+
+		if (readCount == 0 && delay > 0 && maxDelay > delay) {
+			pollInterval = Math.min(Math.max(pollInterval, delay) * 2, maxDelay);
+			skippedTicks = (int) ((pollInterval + delay - 1) / delay) - 1;
+		} else {
+			pollInterval = delay;
+			skippedTicks = 0;
+		}
+	}
+
+	private int runJob() throws Exception {
+		long now = System.currentTimeMillis();
+		Long jobId = lastJobId.updateAndGet(last -> Math.max(now, last + 1));
 		LOGGER.info("------------ starting job with id {} ------------", jobId);
 		JobParameters jobParameters = new JobParametersBuilder().addLong("auditId", jobId).toJobParameters();
 
@@ -51,5 +97,66 @@ public class PeltasScheduler {
 			LOGGER.error("------------ job with id {} FAILED ------------", jobId);
 			throw new PeltasException("Peltas job is stoping!", new Exception(exitStatus.getExitDescription()));
 		}
+
+		int readCount = 0;
+		for (StepExecution stepExecution : run.getStepExecutions()) {
+			readCount += stepExecution.getReadCount();
+		}
+		lastReadCount = readCount;
+		return readCount;
+	}
+
+	/**
+	 * the fixed delay of the schedule, the shortest poll interval
+	 */
+	public void setDelay(long delay) {
+		this.delay = delay;
+		this.pollInterval = delay;
+	}
+
+	/**
+	 * the longest poll interval when backing off, no back off when not above the
+	 * delay (default)
+	 */
+	public void setMaxDelay(long maxDelay) {
+		this.maxDelay = maxDelay;
+	}
+
+	/**
+	 * the number of entries read by a run reading a full page, 0 (default) to
+	 * never relaunch right away
+	 */
+	public void setFullPageSize(int fullPageSize) {
+		this.fullPageSize = fullPageSize;
+	}
+
+	/**
+	 * @return the current interval between two polls
+	 */
+	public long getPollInterval() {
+		return pollInterval;
+	}
+
+	/**
+	 * @return the number of entries read by the last run
+	 */
+	public int getLastReadCount() {
+		return lastReadCount;
+	}
+
+	/**
+	 * the estimate of the entries waiting to be processed, e.g. the ids between
+	 * the checkpoint and the newest audit entry
+	 */
+	public void setBacklogEstimator(LongSupplier backlogEstimator) {
+		this.backlogEstimator = backlogEstimator;
+	}
+
+	/**
+	 * @return the estimate of the entries waiting to be processed, -1 when no
+	 *         {@link #setBacklogEstimator(LongSupplier) estimator} is set
+	 */
+	public long getBacklogEstimate() {
+		return backlogEstimator != null ? backlogEstimator.getAsLong() : -1;
 	}
 }
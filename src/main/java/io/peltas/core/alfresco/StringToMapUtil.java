@@ -16,15 +16,26 @@
 
 package io.peltas.core.alfresco;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.springframework.util.StringUtils;
 
+/**
+ * Parses the <code>map.toString()</code> representation Alfresco uses for
+ * audit values. All methods tokenize the original {@link CharSequence} in a
+ * single pass: keys and values are located by index and trimmed before they
+ * are copied, so only the resulting keys and values are allocated.
+ */
 public class StringToMapUtil {
 
 	public static final char MAP_BEGIN = '{';
@@ -32,132 +43,169 @@ public class StringToMapUtil {
 	public static final char ARRAY_BEGIN = '[';
 	public static final char ARRAY_END = ']';
 	public static final char WHITESPACE = ' ';
-	
+
 	/** a map conversion of a map.toString() string result jsonString should
-	 * starts with { and ends with } like: {key=val, key2=val2}
+	 * starts with { and ends with } like: {key=val, key2=val2}. Nested maps and
+	 * arrays are kept as their raw string representation.
 	 * 
 	 * @param inputString string starting with { or [ and ending with } or ] respectively 
 	 * @param delimiter the delimiter used to find a map entry (key delimiter)
 	 * @return a map representation of the inputString
 	 */
-	static public Map<String, Object> stringToMap(final String inputString, final char delimiter) {
+	static public Map<String, Object> stringToMap(final CharSequence inputString, final char delimiter) {
+		checkMapString(inputString);
+
+		final HashMap<String, Object> map = new HashMap<>();
+		final MapTokenizer tokenizer = new MapTokenizer(inputString, 1, inputString.length() - 1, delimiter);
+		while (tokenizer.next()) {
+			map.put(tokenizer.key, rawValue(inputString, tokenizer.valueStart, tokenizer.valueEnd));
+		}
+		return map;
+	}
+
+	/**
+	 * Same as {@link #stringToMap(CharSequence, char)} but nested maps are
+	 * returned as {@link Map}s and arrays as {@link List}s. Array elements are
+	 * split on the delimiters that are not part of a nested map or array.
+	 */
+	static public HashMap<String, Object> stringToStructuredMap(final CharSequence inputString,
+			final char delimiter) {
+		checkMapString(inputString);
+		return structuredMap(inputString, 1, inputString.length() - 1, delimiter);
+	}
+
+	/**
+	 * Same as {@link #stringToMap(CharSequence, char)} but parsed on demand: the
+	 * input is tokenized on the first access and a value is copied out of the
+	 * input the first time it is read. The returned map is read only, not
+	 * thread-safe and, like {@link #stringToMap(CharSequence, char)}, returns
+	 * the last value of a duplicated key.
+	 */
+	static public Map<String, Object> lazyStringToMap(final CharSequence inputString, final char delimiter) {
+		checkMapString(inputString);
+		return new LazyStringMap(inputString, delimiter);
+	}
+
+	private static void checkMapString(final CharSequence inputString) {
 		if (!StringUtils.hasText(inputString)) {
 			throw new IllegalArgumentException("the string provided cannot be empty");
 		}
 
-		if (!inputString.startsWith("{") && !inputString.endsWith("}")) {
+		if (inputString.charAt(0) != MAP_BEGIN && inputString.charAt(inputString.length() - 1) != MAP_END) {
 			throw new IllegalArgumentException("the string provided is not a map representation");
 		}
+	}
 
-		final HashMap<String, Object> map = new HashMap<>();
-
-		String formated = inputString.substring(1, inputString.length() - 1);
-
-		int currentKeyStartIndex = 0;
-		for (int i = 0; i < formated.length(); i++) {
-			char currentChar = formated.charAt(i);
+	/**
+	 * @return the index of the last char closing the block opened at i
+	 */
+	private static int findBlockEnd(final CharSequence string, int i, final int to, final char first,
+			final char last) {
+		int found = 0;
+		for (; i < to; i++) {
+			final char currentChar = string.charAt(i);
+			if (first == currentChar) {
+				found++;
+			} else if (last == currentChar && --found < 1) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("no closing '" + last + "' found in: " + string);
+	}
 
-			if (' ' == currentChar) {
-				currentKeyStartIndex = i;
+	private static int indexOf(final CharSequence string, final char c, int i, final int to) {
+		for (; i < to; i++) {
+			if (c == string.charAt(i)) {
+				return i;
 			}
+		}
+		return to;
+	}
 
-			if ('=' == currentChar) {
-				// key is on the left
-				String key = formated.substring(currentKeyStartIndex, i);
-				Object value = null;
+	private static int trimStart(final CharSequence string, int start, final int end) {
+		while (start < end && string.charAt(start) <= WHITESPACE) {
+			start++;
+		}
+		return start;
+	}
 
-				for (++i; i < formated.length(); i++) {
-					currentChar = formated.charAt(i);
-					if (WHITESPACE == currentChar) {
-						// TODO first non empty char (tab, space ...)
-						continue;
-					}
+	private static int trimEnd(final CharSequence string, final int start, int end) {
+		while (end > start && string.charAt(end - 1) <= WHITESPACE) {
+			end--;
+		}
+		return end;
+	}
 
-					if (MAP_BEGIN == currentChar) {
-						// it is an object => map
-						// find the end '}'
-						int end = findMapValue(formated, i, MAP_BEGIN, MAP_END);
-						value = formated.substring(i, ++end).trim();
-						i = end;
-//						if (ObjectUtils.isEmpty(value)) {
-//							// not an object find the first delimiter
-//							for (++i; i < formated.length(); i++) {
-//								currentChar = formated.charAt(i);
-//								if (delimiter == currentChar) {
-//									value = formated.substring(k, i++).trim();
-//									break;
-//								}
-//							}
-//						}
-					} else if (ARRAY_BEGIN == currentChar) {
-						// it is an array = > list
-						// find the end ']'
-
-						int end = findMapValue(formated, i, ARRAY_BEGIN, ARRAY_END);
-						value = formated.substring(i, ++end).trim();
-
-						i = end;
-						// value = stringToMap(v, delimiter);
-
-//						if (ObjectUtils.isEmpty(value)) {
-//							value = valueAsList(value, delimiter);
-//						}
-					} else {
-						// it is the value
-						// find the end ','
-
-						int end = findMapValue(formated, i, ' ', delimiter);
-						value = formated.substring(i, end++).trim();
-						i = end;
-					}
+	private static String trimmed(final CharSequence string, final int start, final int end) {
+		final int trimmedStart = trimStart(string, start, end);
+		return string.subSequence(trimmedStart, trimEnd(string, trimmedStart, end)).toString();
+	}
 
-					if ("null".equals(value)) {
-						value = null;
-					}
+	private static boolean isNull(final CharSequence string, final int start, final int end) {
+		return end - start == 4 && string.charAt(start) == 'n' && string.charAt(start + 1) == 'u'
+				&& string.charAt(start + 2) == 'l' && string.charAt(start + 3) == 'l';
+	}
 
-					map.put(key.trim(), value);
-					break;
-				}
+	private static String rawValue(final CharSequence string, int start, int end) {
+		start = trimStart(string, start, end);
+		end = trimEnd(string, start, end);
+		if (isNull(string, start, end)) {
+			return null;
+		}
+		return string.subSequence(start, end).toString();
+	}
 
-				// we go to the next key
-				currentKeyStartIndex = i;
+	private static Object structuredValue(final CharSequence string, int start, int end, final char delimiter) {
+		start = trimStart(string, start, end);
+		end = trimEnd(string, start, end);
+		if (end - start > 1) {
+			final char first = string.charAt(start);
+			final char last = string.charAt(end - 1);
+			if (MAP_BEGIN == first && MAP_END == last) {
+				return structuredMap(string, start + 1, end - 1, delimiter);
+			}
+			if (ARRAY_BEGIN == first && ARRAY_END == last) {
+				return structuredList(string, start + 1, end - 1, delimiter);
 			}
 		}
-		return map;
+		if (isNull(string, start, end)) {
+			return null;
+		}
+		return string.subSequence(start, end).toString();
 	}
 
-	/**
-	 * 
-	 * @param string
-	 * @param i
-	 * @param first  if ' ' than only one last is exepcted
-	 * @param last
-	 * @return the index of the string's map value end char
-	 */
-	private static int findMapValue(final String string, int i, final char first, final char last) {
-		int found = 0;
-
-		if (first == WHITESPACE) {
-			found = 1;
+	private static HashMap<String, Object> structuredMap(final CharSequence string, final int from, final int to,
+			final char delimiter) {
+		final HashMap<String, Object> map = new HashMap<>();
+		final MapTokenizer tokenizer = new MapTokenizer(string, from, to, delimiter);
+		while (tokenizer.next()) {
+			map.put(tokenizer.key, structuredValue(string, tokenizer.valueStart, tokenizer.valueEnd, delimiter));
 		}
+		return map;
+	}
 
-		for (; i < string.length(); i++) {
-			char currentChar = string.charAt(i);
-
-			if (first != WHITESPACE && first == currentChar) {
-				found++;
-			}
-
-			if (last == currentChar) {
-				found--;
-			}
+	private static List<Object> structuredList(final CharSequence string, final int from, final int to,
+			final char delimiter) {
+		if (trimStart(string, from, to) == to) {
+			return new ArrayList<>();
+		}
 
-			if (found < 1) {
-				break;
+		final List<Object> list = new ArrayList<>();
+		int depth = 0;
+		int elementStart = from;
+		for (int i = from; i < to; i++) {
+			final char currentChar = string.charAt(i);
+			if (MAP_BEGIN == currentChar || ARRAY_BEGIN == currentChar) {
+				depth++;
+			} else if (MAP_END == currentChar || ARRAY_END == currentChar) {
+				depth--;
+			} else if (delimiter == currentChar && depth == 0) {
+				list.add(structuredValue(string, elementStart, i, delimiter));
+				elementStart = i + 1;
 			}
 		}
-
-		return i;
+		list.add(structuredValue(string, elementStart, to, delimiter));
+		return list;
 	}
 
 	// TODO: should be refactored during the changes of arrays/object(map) handling
@@ -173,12 +221,12 @@ public class StringToMapUtil {
 
 		List<Object> values = new ArrayList<>();
 		if (value instanceof String) {
-			String tmp = ((String) value).trim();
-			String[] array = StringUtils.delimitedListToStringArray((tmp.substring(1, tmp.length() - 1)),
-					String.valueOf(delimiter));
-
-			for (String v : array) {
-				values.add(v.trim());
+			final String string = (String) value;
+			final int start = trimStart(string, 0, string.length()) + 1;
+			final int end = trimEnd(string, start - 1, string.length()) - 1;
+			if (end > start) {
+				// nested maps and arrays are elements of their own
+				values = structuredList(string, start, end, delimiter);
 			}
 		} else if (value instanceof Collection) {
 			values.addAll(((Collection<?>) value));
@@ -187,4 +235,183 @@ public class StringToMapUtil {
 		}
 		return values;
 	}
+
+	/**
+	 * walks the entries of a map between from (inclusive) and to (exclusive):
+	 * a key is the last word before a '=', a value is either a balanced {...} or
+	 * [...] block or everything up to the next delimiter
+	 */
+	private static final class MapTokenizer {
+
+		private final CharSequence string;
+		private final int to;
+		private final char delimiter;
+
+		private int i;
+		private int currentKeyStartIndex;
+
+		private String key;
+		private int valueStart;
+		private int valueEnd;
+
+		MapTokenizer(final CharSequence string, final int from, final int to, final char delimiter) {
+			this.string = string;
+			this.to = to;
+			this.delimiter = delimiter;
+			this.i = from;
+			this.currentKeyStartIndex = from;
+		}
+
+		boolean next() {
+			for (; i < to; i++) {
+				char currentChar = string.charAt(i);
+
+				if (WHITESPACE == currentChar) {
+					currentKeyStartIndex = i;
+				}
+
+				if ('=' == currentChar) {
+					// key is on the left
+					final int currentKeyEndIndex = i;
+					boolean found = false;
+
+					for (++i; i < to; i++) {
+						currentChar = string.charAt(i);
+						if (WHITESPACE == currentChar) {
+							continue;
+						}
+
+						valueStart = i;
+						if (MAP_BEGIN == currentChar) {
+							valueEnd = findBlockEnd(string, i, to, MAP_BEGIN, MAP_END) + 1;
+							i = valueEnd;
+						} else if (ARRAY_BEGIN == currentChar) {
+							valueEnd = findBlockEnd(string, i, to, ARRAY_BEGIN, ARRAY_END) + 1;
+							i = valueEnd;
+						} else {
+							valueEnd = indexOf(string, delimiter, i, to);
+							i = valueEnd + 1;
+						}
+
+						key = trimmed(string, currentKeyStartIndex, currentKeyEndIndex);
+						found = true;
+						break;
+					}
+
+					// we go to the next key
+					currentKeyStartIndex = i;
+					if (found) {
+						i++;
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * keeps the value bounds of the keys and copies a value out of the source on
+	 * its first read
+	 */
+	private static class LazyStringMap extends AbstractMap<String, Object> {
+
+		private static final Object NOT_LOADED = new Object();
+
+		private final CharSequence source;
+		private final Map<String, Integer> index = new HashMap<>();
+		private MapTokenizer tokenizer;
+		private int[] bounds = new int[32];
+		private Object[] values = new Object[16];
+
+		LazyStringMap(final CharSequence source, final char delimiter) {
+			this.source = source;
+			this.tokenizer = new MapTokenizer(source, 1, source.length() - 1, delimiter);
+		}
+
+		/**
+		 * scans all the entries once, a duplicated key keeps its last value as
+		 * with {@link HashMap#put(Object, Object)}
+		 */
+		private void scan() {
+			if (tokenizer == null) {
+				return;
+			}
+
+			while (tokenizer.next()) {
+				Integer slot = index.get(tokenizer.key);
+				if (slot == null) {
+					slot = index.size();
+					if (values.length == slot) {
+						bounds = Arrays.copyOf(bounds, bounds.length * 2);
+						values = Arrays.copyOf(values, values.length * 2);
+					}
+					index.put(tokenizer.key, slot);
+				}
+				bounds[slot * 2] = tokenizer.valueStart;
+				bounds[slot * 2 + 1] = tokenizer.valueEnd;
+				values[slot] = NOT_LOADED;
+			}
+			tokenizer = null;
+		}
+
+		private Integer slot(final Object key) {
+			scan();
+			return index.get(key);
+		}
+
+		private Object value(final int slot) {
+			Object value = values[slot];
+			if (value == NOT_LOADED) {
+				value = rawValue(source, bounds[slot * 2], bounds[slot * 2 + 1]);
+				values[slot] = value;
+			}
+			return value;
+		}
+
+		@Override
+		public Object get(final Object key) {
+			final Integer slot = slot(key);
+			return slot != null ? value(slot) : null;
+		}
+
+		@Override
+		public boolean containsKey(final Object key) {
+			return slot(key) != null;
+		}
+
+		@Override
+		public int size() {
+			scan();
+			return index.size();
+		}
+
+		@Override
+		public Set<Entry<String, Object>> entrySet() {
+			scan();
+			return new AbstractSet<Entry<String, Object>>() {
+				@Override
+				public Iterator<Entry<String, Object>> iterator() {
+					final Iterator<Entry<String, Integer>> keys = index.entrySet().iterator();
+					return new Iterator<Entry<String, Object>>() {
+						@Override
+						public boolean hasNext() {
+							return keys.hasNext();
+						}
+
+						@Override
+						public Entry<String, Object> next() {
+							final Entry<String, Integer> next = keys.next();
+							return new SimpleImmutableEntry<>(next.getKey(), value(next.getValue()));
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return index.size();
+				}
+			};
+		}
+	}
 }
@@ -17,7 +17,11 @@
 package io.peltas.core.alfresco.config;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 import javax.sql.DataSource;
 
@@ -25,7 +29,19 @@ import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.annotation.AfterThrowing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.job.builder.FlowBuilder;
+import org.springframework.batch.core.job.flow.Flow;
+import org.springframework.batch.core.job.flow.support.SimpleFlow;
 import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.support.builder.ClassifierCompositeItemWriterBuilder;
 import org.springframework.beans.factory.InitializingBean;
@@ -37,9 +53,13 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.messaging.core.GenericMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.StringUtils;
 
 import io.peltas.core.alfresco.PeltasEntry;
 import io.peltas.core.alfresco.PeltasException;
@@ -52,10 +72,20 @@ import io.peltas.core.alfresco.integration.PeltasHandler;
 import io.peltas.core.alfresco.integration.PeltasRouter;
 import io.peltas.core.batch.EmptyItemWriter;
 import io.peltas.core.batch.ItemRouter;
+import io.peltas.core.batch.PeltasAuditJdbcReader;
+import io.peltas.core.batch.PeltasBackfillMergeTasklet;
+import io.peltas.core.batch.PeltasCopyBatchWriter;
 import io.peltas.core.batch.PeltasDataHolder;
+import io.peltas.core.batch.PeltasDirectDispatcher;
+import io.peltas.core.batch.PeltasIdRangePartitioner;
+import io.peltas.core.batch.PeltasItemProcessor;
 import io.peltas.core.batch.PeltasJdbcBatchWriter;
+import io.peltas.core.batch.PeltasProcessor;
 import io.peltas.core.config.AbstractPeltasConfiguration;
 import io.peltas.core.config.EnablePeltasInMemory;
+import io.peltas.core.repository.PeltasCheckpointStore;
+import io.peltas.core.repository.PeltasJdbcCheckpointStore;
+import io.peltas.core.repository.PeltasTimestampCheckpointStore;
 import io.peltas.core.repository.PeltasTimestampRepository;
 
 @PropertySource(ignoreResourceNotFound = true, value = { "classpath:io/peltas/peltas.properties" })
@@ -68,6 +98,8 @@ public abstract class AbstractAlfrescoPeltasConfiguration
 
 	public static final String AUDIT_ID_SEPARATOR = "___";
 
+	public static final String DEFAULT_LANE_KEY = "/alfresco-access/transaction/move/from/path,/alfresco-access/transaction/path";
+
 	@Autowired
 	protected GenericMessagingTemplate template;
 
@@ -80,8 +112,65 @@ public abstract class AbstractAlfrescoPeltasConfiguration
 	@Autowired
 	private JobLauncher jobLauncher;
 
+	@Autowired
+	private JobBuilderFactory jobBuilderFactory;
+
+	@Autowired
+	private StepBuilderFactory stepBuilderFactory;
+
+	@Autowired
+	private PlatformTransactionManager platformTransactionManager;
+
 	@Value("${peltas.chunksize}")
 	protected Integer chunkSize;
+
+	@Value("${peltas.writer.batched:false}")
+	protected boolean batchedWriter;
+
+	@Value("${peltas.writer.rowsperstatement:0}")
+	protected int writerRowsPerStatement;
+
+	@Value("${peltas.processor.direct:false}")
+	protected boolean directDispatch;
+
+	@Value("${peltas.processor.chunk:false}")
+	protected boolean chunkProcessing;
+
+	@Value("${peltas.processor.threads:1}")
+	protected int processorThreads;
+
+	@Value("${peltas.processor.lanes:0}")
+	protected int processorLanes;
+
+	@Value("${peltas.processor.lanekey:}")
+	protected String processorLaneKey;
+
+	@Value("${peltas.checkpoint.store:jpa}")
+	protected String checkpointStoreType;
+
+	@Value("${peltas.scheduler.fixedDelay:0}")
+	protected long schedulerDelay;
+
+	@Value("${peltas.scheduler.maxDelay:0}")
+	protected long schedulerMaxDelay;
+
+	@Value("${peltas.scheduler.fullPageSize:0}")
+	protected int schedulerFullPageSize;
+
+	@Value("${peltas.continuous.enabled:false}")
+	protected boolean continuous;
+
+	@Value("${peltas.continuous.pollInterval:1000}")
+	protected long continuousPollInterval;
+
+	@Value("${peltas.continuous.commitInterval:1000}")
+	protected long continuousCommitInterval;
+
+	@Value("${peltas.continuous.metadataInterval:60000}")
+	protected long continuousMetadataInterval;
+
+	@Value("${peltas.backfill.partitions:4}")
+	protected int backfillPartitions;
 	
 	@Value("classpath:io/peltas/executions/**") 
 	private Resource[] resources;
@@ -90,6 +179,10 @@ public abstract class AbstractAlfrescoPeltasConfiguration
 
 	private PeltasJdbcBatchWriter peltasJdbcBatchWriter;
 
+	private PeltasCopyBatchWriter peltasCopyBatchWriter;
+
+	private ThreadPoolTaskExecutor processingTaskExecutor;
+
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
@@ -110,7 +203,7 @@ public abstract class AbstractAlfrescoPeltasConfiguration
 		return registry;
 	}
 
-	@Bean(initMethod = "checkEvaluatorConfigurationOccurencies")
+	@Bean(initMethod = "initialize")
 	public PeltasHandlerConfigurationProperties alfrescoHandlerProperties() {
 		return new PeltasHandlerConfigurationProperties(evaluatorExpressionRegistry(), resources);
 	}
@@ -125,10 +218,29 @@ public abstract class AbstractAlfrescoPeltasConfiguration
 		return new PeltasHandler();
 	}
 
+	/**
+	 * with <code>peltas.continuous.enabled</code> the scheduler launches the
+	 * {@link #continuousJob()}, which runs until stopped or failed and is
+	 * launched again by the next tick
+	 */
 	@Bean
 	@ConditionalOnProperty(value = "peltas.scheduler.enabled", matchIfMissing = true)
 	public Object scheduler() throws IOException, Exception {
-		return new PeltasScheduler(jobLauncher, job());
+		if (processor() instanceof PeltasProcessor) {
+			checkCheckpointStore(((PeltasProcessor) processor()).getCheckpointStore(), "processor");
+		}
+		if (reader() instanceof PeltasAuditJdbcReader) {
+			checkCheckpointStore(((PeltasAuditJdbcReader) reader()).getCheckpointStore(), "reader");
+		}
+
+		PeltasScheduler scheduler = new PeltasScheduler(jobLauncher, continuous ? continuousJob() : job());
+		scheduler.setDelay(schedulerDelay);
+		scheduler.setMaxDelay(schedulerMaxDelay);
+		scheduler.setFullPageSize(schedulerFullPageSize);
+		if (reader() instanceof PeltasAuditJdbcReader) {
+			scheduler.setBacklogEstimator(((PeltasAuditJdbcReader) reader())::getBacklogEstimate);
+		}
+		return scheduler;
 	}
 
 	@AfterThrowing(value = "(execution(* io.peltas.alfresco.access..*(..)))", throwing = "e")
@@ -137,6 +249,35 @@ public abstract class AbstractAlfrescoPeltasConfiguration
 		System.exit(-1);
 	}
 
+	/**
+	 * the checkpoints as {@link io.peltas.core.repository.PeltasTimestamp}
+	 * entities (<code>peltas.checkpoint.store=jpa</code>, default) or in the
+	 * <code>peltas_checkpoint</code> table (<code>jdbc</code>). The live
+	 * processor and reader must be created with this store, the
+	 * {@link #scheduler()} fails otherwise.
+	 */
+	@Bean
+	public PeltasCheckpointStore checkpointStore() {
+		if ("jdbc".equals(checkpointStoreType)) {
+			return new PeltasJdbcCheckpointStore(new NamedParameterJdbcTemplate(jdbcTemplate));
+		}
+		if ("jpa".equals(checkpointStoreType)) {
+			return new PeltasTimestampCheckpointStore(auditRepository);
+		}
+		throw new PeltasException("unknown peltas.checkpoint.store: " + checkpointStoreType);
+	}
+
+	private void checkCheckpointStore(PeltasCheckpointStore store, String name) {
+		if (store == null) {
+			return;
+		}
+		boolean jdbc = store instanceof PeltasJdbcCheckpointStore;
+		if (jdbc != "jdbc".equals(checkpointStoreType)) {
+			throw new PeltasException("the live " + name + " checkpoints in " + store.getClass().getSimpleName()
+					+ " but peltas.checkpoint.store is " + checkpointStoreType + ", create it with checkpointStore()");
+		}
+	}
+
 	@Bean
 	public PeltasDatasourceProperties alfrescoAccessDatasourceProperties() {
 		return new PeltasDatasourceProperties();
@@ -153,6 +294,25 @@ public abstract class AbstractAlfrescoPeltasConfiguration
 		return new PeltasRouter(alfrescoHandlerProperties(), alfrescoAuditProperties(), false);
 	}
 
+	/**
+	 * with <code>peltas.processor.direct</code> the entries are routed and
+	 * handled by {@link PeltasHandler} and {@link DoNotProcessHandler} without
+	 * messaging, other channels are still sent their messages
+	 */
+	@Override
+	protected PeltasDirectDispatcher<PeltasEntry> directDispatcher() {
+		if (!directDispatch) {
+			return null;
+		}
+
+		final PeltasHandler handler = auditProcessorHandler();
+		final DoNotProcessHandler doNotProcessHandler = doNotProcessHandler();
+		return new PeltasDirectDispatcher<>(router()).handler("auditprocess", handler::handle)
+				.chunkHandler("auditprocess", handler::handleAll)
+				.handler("donotprocess", doNotProcessHandler::handle)
+				.chunkHandler("donotprocess", doNotProcessHandler::handleAll);
+	}
+
 	// @Override
 	// public PeltasItemProcessor<AlfrescoAuditEntry, PeltasDataHolder>
 	// processor() {
@@ -173,16 +333,27 @@ public abstract class AbstractAlfrescoPeltasConfiguration
 			public ItemWriter<? super PeltasDataHolder> classify(final PeltasDataHolder classifiable) {
 				String writerName = classifiable.getConfig().getPipeline().getWriter();
 
-				if ("jdbchandler".equals(writerName)) {
+				if ("jdbchandler".equals(writerName) || "copyhandler".equals(writerName)) {
 					PeltasHandlerProperties config = classifiable.getConfig();
 					List<String> pipeline = config.getPipeline().getExecutions();
 					if (pipeline == null || pipeline.size() == 0) {
 						return new EmptyItemWriter<>();
 					}
 
+					if ("copyhandler".equals(writerName)) {
+						if (peltasCopyBatchWriter == null) {
+							peltasCopyBatchWriter = new PeltasCopyBatchWriter(namedParameterJdbcTemplate,
+									alfrescoHandlerProperties);
+							peltasCopyBatchWriter.setRowsPerStatement(writerRowsPerStatement);
+						}
+						return peltasCopyBatchWriter;
+					}
+
 					if (peltasJdbcBatchWriter == null) {
 						peltasJdbcBatchWriter = new PeltasJdbcBatchWriter(namedParameterJdbcTemplate,
 								alfrescoHandlerProperties);
+						peltasJdbcBatchWriter.setBatched(batchedWriter);
+						peltasJdbcBatchWriter.setRowsPerStatement(writerRowsPerStatement);
 					}
 					return peltasJdbcBatchWriter;
 				}
@@ -194,6 +365,81 @@ public abstract class AbstractAlfrescoPeltasConfiguration
 		return new ClassifierCompositeItemWriterBuilder<PeltasDataHolder>().classifier(classifier1).build();
 	}
 
+	/**
+	 * Backfills the audit entries from <code>fromId</code> (inclusive) to
+	 * <code>toId</code> (exclusive) in {@link #backfillPartitions} id ranges
+	 * processed in parallel, each with its own reader, checkpoint and thread. Once
+	 * all of them completed, the live checkpoint is moved to the end of the range
+	 * so the live job continues from there. The live job should not run during
+	 * the backfill unless its checkpoint is already past <code>toId</code>, and
+	 * the merge fails when it is below <code>fromId</code>.
+	 * <p>
+	 * Launching it again with the same range restarts the failed partitions from
+	 * their checkpoints.
+	 */
+	public JobExecution launchBackfill(long fromId, long toId) throws Exception {
+		return jobLauncher.run(backfillJob(fromId, toId), new JobParametersBuilder().addLong("fromId", fromId)
+				.addLong("toId", toId).toJobParameters());
+	}
+
+	public Job backfillJob(long fromId, long toId) throws Exception {
+		Map<String, ExecutionContext> partitions = new PeltasIdRangePartitioner(fromId, toId)
+				.partition(backfillPartitions);
+
+		List<Flow> flows = new ArrayList<>();
+		List<String> partitionNames = new ArrayList<>();
+		for (Map.Entry<String, ExecutionContext> partition : partitions.entrySet()) {
+			String partitionName = getApplicationName() + ".backfill." + partition.getKey();
+			partitionNames.add(partitionName);
+
+			ExecutionContext range = partition.getValue();
+			SimpleStepBuilder<PeltasEntry, PeltasDataHolder> builder = stepBuilderFactory
+					.get("peltas.backfill." + partition.getKey()).<PeltasEntry, PeltasDataHolder>chunk(getChunkSize())
+					.reader(backfillReader(partitionName, range.getLong(PeltasIdRangePartitioner.FROM_ID),
+							range.getLong(PeltasIdRangePartitioner.TO_ID)))
+					.processor(backfillProcessor(partitionName)).writer(writer());
+			Step step = processingStepBuilder(builder).transactionManager(platformTransactionManager).build();
+			flows.add(new FlowBuilder<SimpleFlow>(step.getName()).start(step).build());
+		}
+
+		Step merge = stepBuilderFactory.get("peltas.backfill.merge")
+				.tasklet(new PeltasBackfillMergeTasklet(checkpointStore(), getApplicationName(), partitionNames, fromId,
+						toId))
+				.transactionManager(platformTransactionManager).build();
+
+		Flow split = new FlowBuilder<SimpleFlow>("peltas.backfill.partitions")
+				.split(new SimpleAsyncTaskExecutor("peltas-backfill-")).add(flows.toArray(new Flow[flows.size()]))
+				.build();
+		return jobBuilderFactory.get("peltas.backfill").start(split).next(merge).end().build();
+	}
+
+	/**
+	 * reader of a backfill partition, checkpointed under
+	 * <code>partitionName</code>
+	 */
+	protected ItemReader<PeltasEntry> backfillReader(String partitionName, long fromId, long toId) {
+		PeltasAuditJdbcReader reader = new PeltasAuditJdbcReader(partitionName, alfrescoAuditApplication(),
+				alfrescoDataSource(), checkpointStore());
+		reader.setFromId(fromId);
+		reader.setToId(toId);
+		reader.setPageSize(getChunkSize() * 10);
+		return reader;
+	}
+
+	protected PeltasItemProcessor<PeltasEntry, PeltasDataHolder> backfillProcessor(String partitionName) {
+		PeltasProcessor processor = new PeltasProcessor(partitionName, template, checkpointStore());
+		processor.setDirectDispatcher(directDispatcher());
+		return processor;
+	}
+
+	/**
+	 * the (read-only) Alfresco database read by the backfill
+	 */
+	protected DataSource alfrescoDataSource() {
+		throw new PeltasException(
+				"the Alfresco datasource is required for the backfill, override alfrescoDataSource()");
+	}
+
 	@Bean
 	public DoNotProcessHandler doNotProcessHandler() {
 		return new DoNotProcessHandler();
@@ -204,4 +450,81 @@ public abstract class AbstractAlfrescoPeltasConfiguration
 		return chunkSize;
 	}
 
+	@Override
+	protected boolean isChunkProcessing() {
+		return chunkProcessing;
+	}
+
+	/**
+	 * with <code>peltas.processor.threads</code> above 1 the entries of a chunk
+	 * are mapped concurrently by a pool of that many threads, shared by the live
+	 * and the backfill steps
+	 */
+	@Override
+	protected synchronized Executor processingTaskExecutor() {
+		if (processorThreads <= 1) {
+			return null;
+		}
+
+		if (processingTaskExecutor == null) {
+			ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+			taskExecutor.setCorePoolSize(processorThreads);
+			taskExecutor.setMaxPoolSize(processorThreads);
+			taskExecutor.setThreadNamePrefix(getApplicationName() + "-process-");
+			taskExecutor.setDaemon(true);
+			taskExecutor.initialize();
+			processingTaskExecutor = taskExecutor;
+		}
+		return processingTaskExecutor;
+	}
+
+	@Override
+	protected long getPollInterval() {
+		return continuousPollInterval;
+	}
+
+	@Override
+	protected long getCommitInterval() {
+		return continuousCommitInterval;
+	}
+
+	@Override
+	protected long getMetadataInterval() {
+		return continuousMetadataInterval;
+	}
+
+	/**
+	 * with <code>peltas.processor.lanes</code> the entries mapped by the
+	 * <code>peltas.processor.threads</code> are hashed on the first audit value
+	 * present of the comma separated <code>peltas.processor.lanekey</code> (by
+	 * default the source path of a move, otherwise the node path, which every
+	 * node event records) onto that many lanes. The entries of a path are mapped
+	 * in order and a move is mapped after the entries of its source path, but the
+	 * default key is not stable for a node: the entries recorded at the target
+	 * path of a move or rename may go to another lane and be mapped before the
+	 * move. When the order of the entries of moved nodes matters, configure a key
+	 * every entry of a node records with the same value, or a single lane.
+	 * Entries having none of the values share one lane.
+	 */
+	@Override
+	protected int getProcessingLanes() {
+		return processorLanes;
+	}
+
+	@Override
+	protected Function<PeltasEntry, Object> processingLaneKey() {
+		final String[] laneKeys = StringUtils.commaDelimitedListToStringArray(
+				StringUtils.hasText(processorLaneKey) ? processorLaneKey : DEFAULT_LANE_KEY);
+		return entry -> {
+			for (String laneKey : laneKeys) {
+				Object key = PeltasHandler.getMappedSingleValueProperty(laneKey.trim(), entry);
+				if (key != null && !"".equals(key)) {
+					return key;
+				}
+			}
+			// entries without any of the values are mapped in order in one lane
+			return null;
+		};
+	}
+
 }
@@ -25,14 +25,13 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.apache.commons.codec.digest.DigestUtils;
@@ -47,9 +46,7 @@ import org.springframework.util.StringUtils;
 
 import io.peltas.core.alfresco.PeltasEntry;
 import io.peltas.core.alfresco.PeltasException;
-import io.peltas.core.alfresco.config.expression.AbstractEvalatorExpression;
 import io.peltas.core.alfresco.config.expression.EvaluatorExpressionRegistry;
-import io.peltas.core.alfresco.integration.PeltasHandler;
 
 @ConfigurationProperties(prefix = "peltas", ignoreInvalidFields = true, ignoreUnknownFields = true)
 public class PeltasHandlerConfigurationProperties {
@@ -60,9 +57,12 @@ public class PeltasHandlerConfigurationProperties {
 	private final LinkedMultiValueMap<String, String> shaMap = new LinkedMultiValueMap<>();
 	private final Map<String, PeltasHandlerProperties> handlerConfigurationMap = new HashMap<>();
 	private final Map<String, PipelineExecution> executionConfigurationMap = new HashMap<>();
+	private final Map<Pipeline, PipelineExecutionGraph> executionGraphs = new ConcurrentHashMap<>();
 
 	private final EvaluatorExpressionRegistry registry;
 
+	private volatile PeltasHandlerMatcher handlerMatcher;
+
 	private final Map<String, Map<String, String>> mappedExecutionsConfigResources;
 
 	public PeltasHandlerConfigurationProperties(EvaluatorExpressionRegistry registry, Resource[] resources) {
@@ -102,6 +102,8 @@ public class PeltasHandlerConfigurationProperties {
 			String evaluator = entry.getValue().getEvaluator();
 			addEvaluator(evaluator, entry.getKey());
 		}
+
+		handlerMatcher = new PeltasHandlerMatcher(evaluatorsMap, registry);
 	}
 
 	public void setExecution(Map<String, PipelineExecution> executions) {
@@ -124,6 +126,30 @@ public class PeltasHandlerConfigurationProperties {
 		return pipelineExecution;
 	}
 
+	public void initialize() {
+		checkEvaluatorConfigurationOccurencies();
+		checkPipelineExecutions();
+	}
+
+	/**
+	 * builds the execution graph of every handler pipeline, failing on
+	 * references to unknown executions
+	 */
+	public void checkPipelineExecutions() {
+		for (Entry<String, PeltasHandlerProperties> entry : handlerConfigurationMap.entrySet()) {
+			Pipeline pipeline = entry.getValue().getPipeline();
+			if (pipeline != null && pipeline.getExecutions() != null && !pipeline.getExecutions().isEmpty()) {
+				executionGraphs.put(pipeline,
+						new PipelineExecutionGraph(entry.getKey(), pipeline, this::getPipelineExecution));
+			}
+		}
+	}
+
+	public PipelineExecutionGraph getExecutionGraph(Pipeline pipeline) {
+		return executionGraphs.computeIfAbsent(pipeline,
+				p -> new PipelineExecutionGraph("pipeline " + p.getExecutions(), p, this::getPipelineExecution));
+	}
+
 	private void addEvaluator(String evaluator, String key) {
 		if (evaluatorsMap.containsKey(key)) {
 			LOGGER.error("Please check your Peltas evaluator configuration. There are duplicate evaluator entries: {}",
@@ -134,68 +160,16 @@ public class PeltasHandlerConfigurationProperties {
 	}
 
 	public String findFirstBestMatchHandler(PeltasEntry auditEntry) {
-		Set<Entry<String, String>> entrySet = evaluatorsMap.entrySet();
-		LinkedMultiValueMap<String, Integer> matchMap = new LinkedMultiValueMap<>();
-		Map<String, Integer> highestEvaluatorRank = new HashMap<>();
-		for (Entry<String, String> evaluatorEntry : entrySet) {
-			List<String> evaluators = new ArrayList<>();
-			String evaluator = evaluatorEntry.getValue();
-			if (evaluator.contains("|")) {
-				String[] evaluatorArray = StringUtils.delimitedListToStringArray(evaluator, "|");
-				evaluators.addAll(Arrays.asList(evaluatorArray));
-			} else {
-				evaluators.add(evaluator);
-			}
-
-			for (String eval : evaluators) {
-				if (eval.contains("=")) {
-					String[] evalKeyVal = StringUtils.delimitedListToStringArray(eval, "=");
-					String evalKeyRight = evalKeyVal[1];
-
-					String[] expressionKeyVal = StringUtils.delimitedListToStringArray(evalKeyRight, "<>");
-					String expression = null;
-					if (expressionKeyVal.length > 1) {
-						expression = expressionKeyVal[0].trim();
-						evalKeyRight = evalKeyRight.replaceFirst(expression + "<>", "").trim();
-					}
-					AbstractEvalatorExpression evaluatorExpression = this.registry.getEvaluatorExpression(expression);
-					if (evaluatorExpression.isValueMapped(evalKeyVal[0], evalKeyRight, auditEntry)) {
-						matchMap.add(evaluatorEntry.getKey(), 1);
-					}
-				} else {
-					// TODO use equals evaluator
-					Object mappedValue = PeltasHandler.getMappedSingleValueProperty(eval, auditEntry);
-					if (mappedValue != null) {
-						matchMap.add(evaluatorEntry.getKey(), 1);
-					}
-				}
-			}
-
-			highestEvaluatorRank.put(evaluatorEntry.getKey(), evaluators.size());
-		}
-
-		Set<Entry<String, List<Integer>>> matchMapSet = matchMap.entrySet();
-		String bestMatchEvaluatorKey = null;
-		Integer bestMatchSize = 0;
-		for (Entry<String, List<Integer>> entry : matchMapSet) {
-			List<Integer> matchList = entry.getValue();
-			if (matchList.size() > bestMatchSize) {
-				bestMatchSize = matchList.size();
-				bestMatchEvaluatorKey = entry.getKey();
-			}
-		}
+		return getHandlerMatcher().findFirstBestMatch(auditEntry);
+	}
 
-		if (bestMatchEvaluatorKey != null) {
-			List<Integer> match = matchMap.get(bestMatchEvaluatorKey);
-			if (match != null) {
-				Integer evaluatorSize = highestEvaluatorRank.get(bestMatchEvaluatorKey);
-				if (evaluatorSize == match.size()) {
-					return bestMatchEvaluatorKey;
-				}
-			}
+	public PeltasHandlerMatcher getHandlerMatcher() {
+		PeltasHandlerMatcher matcher = handlerMatcher;
+		if (matcher == null) {
+			matcher = new PeltasHandlerMatcher(evaluatorsMap, registry);
+			handlerMatcher = matcher;
 		}
-
-		return null;
+		return matcher;
 	}
 
 	public PeltasHandlerProperties getForHandler(String handler) {
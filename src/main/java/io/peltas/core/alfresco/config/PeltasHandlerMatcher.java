@@ -0,0 +1,207 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.peltas.core.alfresco.config;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import io.peltas.core.alfresco.PeltasEntry;
+import io.peltas.core.alfresco.config.expression.EqualsExpressionEvaluator;
+import io.peltas.core.alfresco.config.expression.EvaluatorCondition;
+import io.peltas.core.alfresco.config.expression.EvaluatorExpressionRegistry;
+
+/**
+ * Immutable, precompiled view of the handler evaluators. Handlers are scored in
+ * the iteration order of the evaluators they were compiled from: the handler
+ * with the most matching conditions wins (first one on a tie) and is returned
+ * only if all of its conditions match.
+ * <p>
+ * Plain <code>path=value</code> conditions are kept in an inverted index keyed
+ * by audit path and expected value, so an entry only scores the handlers whose
+ * values it actually carries. Nested, <code>contains&lt;&gt;</code> and
+ * presence-only conditions are evaluated by scanning the handlers having them.
+ */
+public class PeltasHandlerMatcher {
+
+	private final String[] handlers;
+	private final EvaluatorCondition[][] conditions;
+
+	private final String[] indexedPaths;
+	private final Map<String, int[]>[] indexedValues;
+
+	private final int[] scannedHandlers;
+	private final EvaluatorCondition[][] scannedConditions;
+
+	// per thread scoring state, reused to keep routing allocation free
+	private final ThreadLocal<MatchState> matchState;
+
+	@SuppressWarnings("unchecked")
+	public PeltasHandlerMatcher(Map<String, String> evaluators, EvaluatorExpressionRegistry registry) {
+		this.handlers = new String[evaluators.size()];
+		this.conditions = new EvaluatorCondition[evaluators.size()][];
+
+		Map<String, Map<String, List<Integer>>> index = new LinkedHashMap<>();
+		List<Integer> scanned = new ArrayList<>();
+		List<EvaluatorCondition[]> scannedConditionList = new ArrayList<>();
+
+		int i = 0;
+		for (Entry<String, String> entry : evaluators.entrySet()) {
+			handlers[i] = entry.getKey();
+			conditions[i] = EvaluatorCondition.compileAll(entry.getValue(), registry);
+
+			List<EvaluatorCondition> notIndexed = new ArrayList<>();
+			for (EvaluatorCondition condition : conditions[i]) {
+				if (isIndexable(condition)) {
+					index.computeIfAbsent(condition.getPath(), k -> new HashMap<>())
+							.computeIfAbsent(condition.getValue(), k -> new ArrayList<>()).add(i);
+				} else {
+					notIndexed.add(condition);
+				}
+			}
+
+			if (!notIndexed.isEmpty()) {
+				scanned.add(i);
+				scannedConditionList.add(notIndexed.toArray(new EvaluatorCondition[notIndexed.size()]));
+			}
+			i++;
+		}
+
+		this.indexedPaths = new String[index.size()];
+		this.indexedValues = new Map[index.size()];
+		int p = 0;
+		for (Entry<String, Map<String, List<Integer>>> pathEntry : index.entrySet()) {
+			Map<String, int[]> values = new HashMap<>();
+			for (Entry<String, List<Integer>> valueEntry : pathEntry.getValue().entrySet()) {
+				values.put(valueEntry.getKey(), toArray(valueEntry.getValue()));
+			}
+			indexedPaths[p] = pathEntry.getKey();
+			indexedValues[p] = values;
+			p++;
+		}
+
+		this.scannedHandlers = toArray(scanned);
+		this.scannedConditions = scannedConditionList.toArray(new EvaluatorCondition[scannedConditionList.size()][]);
+
+		final int handlerCount = handlers.length;
+		this.matchState = ThreadLocal.withInitial(() -> new MatchState(handlerCount));
+	}
+
+	private static boolean isIndexable(EvaluatorCondition condition) {
+		return condition.getExpression() != null
+				&& condition.getExpression().getClass() == EqualsExpressionEvaluator.class
+				&& condition.getNestedKey() == null && condition.getValue() != null;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	public String findFirstBestMatch(PeltasEntry auditEntry) {
+		Map<String, Object> values = auditEntry.getValues();
+		MatchState state = matchState.get();
+		try {
+			for (int p = 0; p < indexedPaths.length; p++) {
+				Object value = values.get(indexedPaths[p]);
+				if (value instanceof String) {
+					int[] matchingHandlers = indexedValues[p].get(value);
+					if (matchingHandlers != null) {
+						for (int handler : matchingHandlers) {
+							state.match(handler);
+						}
+					}
+				}
+			}
+
+			for (int s = 0; s < scannedHandlers.length; s++) {
+				for (EvaluatorCondition condition : scannedConditions[s]) {
+					if (condition.matches(auditEntry)) {
+						state.match(scannedHandlers[s]);
+					}
+				}
+			}
+
+			int bestMatchIndex = state.bestMatch();
+			if (bestMatchIndex >= 0 && state.matches(bestMatchIndex) == conditions[bestMatchIndex].length) {
+				return handlers[bestMatchIndex];
+			}
+
+			return null;
+		} finally {
+			state.reset();
+		}
+	}
+
+	public EvaluatorCondition[] getConditions(String handler) {
+		for (int i = 0; i < handlers.length; i++) {
+			if (handlers[i].equals(handler)) {
+				return conditions[i].clone();
+			}
+		}
+		return null;
+	}
+
+	private static class MatchState {
+		private final int[] matches;
+		private final int[] touched;
+		private int touchedSize;
+
+		MatchState(int handlerCount) {
+			this.matches = new int[handlerCount];
+			this.touched = new int[handlerCount];
+		}
+
+		void match(int handler) {
+			if (matches[handler]++ == 0) {
+				touched[touchedSize++] = handler;
+			}
+		}
+
+		int matches(int handler) {
+			return matches[handler];
+		}
+
+		// most matches wins, the first configured handler on a tie
+		int bestMatch() {
+			int bestMatchIndex = -1;
+			int bestMatchSize = 0;
+			for (int t = 0; t < touchedSize; t++) {
+				int handler = touched[t];
+				int matchSize = matches[handler];
+				if (matchSize > bestMatchSize || (matchSize == bestMatchSize && handler < bestMatchIndex)) {
+					bestMatchSize = matchSize;
+					bestMatchIndex = handler;
+				}
+			}
+			return bestMatchIndex;
+		}
+
+		void reset() {
+			for (int t = 0; t < touchedSize; t++) {
+				matches[touched[t]] = 0;
+			}
+			touchedSize = 0;
+		}
+	}
+}
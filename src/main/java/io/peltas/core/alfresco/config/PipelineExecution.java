@@ -27,7 +27,7 @@ public class PipelineExecution {
 	}
 
 	public String getConfigValue(String key) {
-		String prop = config.get(key);
+		String prop = config != null ? config.get(key) : null;
 		return prop;
 	}
 }
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.peltas.core.alfresco.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.springframework.jdbc.core.SqlParameter;
+import org.springframework.jdbc.core.namedparam.EmptySqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+
+import io.peltas.core.alfresco.PeltasException;
+import io.peltas.core.batch.PeltasCopyBatchWriter;
+
+/**
+ * The dependencies between the executions of a {@link Pipeline}, read from the
+ * <code>:executionKey.column</code> named parameters of their sql. Executions
+ * are grouped in levels: an execution only depends on executions of the
+ * previous levels, so the executions of one level are independent. A
+ * reference to an execution that is unknown or does not run before is
+ * rejected when the graph is built, as is a reference to an insert-only
+ * execution of the <code>copyhandler</code> writer, which returns no results.
+ */
+public class PipelineExecutionGraph {
+
+	public static final String AUDIT_PARAMETER_PREFIX = "audit";
+
+	private final List<List<String>> levels;
+	private final Map<String, List<List<String>>> collectionLevels;
+
+	public PipelineExecutionGraph(String name, Pipeline pipeline, Function<String, PipelineExecution> executions) {
+		List<String> itemExecutions = pipeline.getExecutions() != null
+				? new ArrayList<>(new LinkedHashSet<>(pipeline.getExecutions()))
+				: Collections.<String>emptyList();
+
+		boolean copied = "copyhandler".equals(pipeline.getWriter());
+		Map<String, Integer> itemLevels = new HashMap<>();
+		this.levels = levels(name, itemExecutions, Collections.<String, Integer>emptyMap(), null, executions,
+				itemLevels, copied);
+
+		this.collectionLevels = new LinkedHashMap<>();
+		if (pipeline.getCollections() != null) {
+			for (Entry<String, PipelineCollection> entry : pipeline.getCollections().entrySet()) {
+				List<String> collectionExecutions = entry.getValue().getExecutions() != null
+						? entry.getValue().getExecutions()
+						: Collections.<String>emptyList();
+				collectionLevels.put(entry.getKey(), levels(name + "." + entry.getKey(), collectionExecutions,
+						itemLevels, entry.getKey(), executions, new HashMap<>(), copied));
+			}
+		}
+	}
+
+	/**
+	 * @param available the executions that already ran, their results can be
+	 *                  referenced but do not add a dependency
+	 * @param valuesKey the prefix of the flattened values that can be
+	 *                  referenced, null if none
+	 * @param copied    whether the insert-only executions are copied and return
+	 *                  no results
+	 */
+	private static List<List<String>> levels(String name, List<String> ordered, Map<String, Integer> available,
+			String valuesKey, Function<String, PipelineExecution> executions, Map<String, Integer> executionLevels,
+			boolean copied) {
+		List<List<String>> levels = new ArrayList<>();
+		for (String execution : ordered) {
+			int level = 0;
+			for (String reference : references(name, execution, executions)) {
+				if (AUDIT_PARAMETER_PREFIX.equals(reference) || reference.equals(valuesKey)) {
+					continue;
+				}
+				if (copied && (available.containsKey(reference) || executionLevels.containsKey(reference))
+						&& Boolean.parseBoolean(
+								executions.apply(reference).getConfigValue(PeltasCopyBatchWriter.INSERT_ONLY_CONFIG))) {
+					throw new PeltasException("execution " + execution + " of " + name + " references " + reference
+							+ " which is insert-only and copied without returning results");
+				}
+				if (available.containsKey(reference)) {
+					continue;
+				}
+
+				Integer dependencyLevel = executionLevels.get(reference);
+				if (dependencyLevel == null) {
+					throw new PeltasException("execution " + execution + " of " + name + " references " + reference
+							+ " which is not an execution running before it in " + ordered);
+				}
+				level = Math.max(level, dependencyLevel + 1);
+			}
+
+			executionLevels.put(execution, level);
+			while (levels.size() <= level) {
+				levels.add(new ArrayList<>());
+			}
+			levels.get(level).add(execution);
+		}
+		return levels;
+	}
+
+	/**
+	 * @return the prefixes of the named parameters having the
+	 *         <code>prefix.name</code> notation
+	 */
+	private static Set<String> references(String name, String execution,
+			Function<String, PipelineExecution> executions) {
+		PipelineExecution pipelineExecution = executions.apply(execution);
+		String sql = pipelineExecution != null ? pipelineExecution.getConfigValue("sql") : null;
+		if (sql == null) {
+			throw new PeltasException("no sql is configured for execution " + execution + " of " + name);
+		}
+
+		Set<String> references = new LinkedHashSet<>();
+		for (SqlParameter parameter : NamedParameterUtils
+				.buildSqlParameterList(NamedParameterUtils.parseSqlStatement(sql), EmptySqlParameterSource.INSTANCE)) {
+			int index = parameter.getName().indexOf('.');
+			if (index > 0) {
+				references.add(parameter.getName().substring(0, index));
+			}
+		}
+		return references;
+	}
+
+	/**
+	 * @return the pipeline executions grouped by level
+	 */
+	public List<List<String>> getLevels() {
+		return levels;
+	}
+
+	/**
+	 * @return the executions of a collection grouped by level, they all run
+	 *         after the pipeline executions
+	 */
+	public List<List<String>> getCollectionLevels(String collectionKey) {
+		List<List<String>> levels = collectionLevels.get(collectionKey);
+		return levels != null ? levels : Collections.<List<String>>emptyList();
+	}
+}
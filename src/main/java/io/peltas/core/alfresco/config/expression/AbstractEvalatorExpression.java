@@ -30,4 +30,8 @@ public abstract class AbstractEvalatorExpression {
 	}
 
 	public abstract boolean isValueMapped(String evaluatorKey, String evaluatorValue, PeltasEntry auditEntry);
+
+	public boolean isValueMapped(EvaluatorCondition condition, PeltasEntry auditEntry) {
+		return isValueMapped(condition.getKey(), condition.getValue(), auditEntry);
+	}
 }
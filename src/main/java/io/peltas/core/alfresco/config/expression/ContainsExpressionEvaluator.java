@@ -19,6 +19,7 @@ package io.peltas.core.alfresco.config.expression;
 import java.util.List;
 
 import io.peltas.core.alfresco.PeltasEntry;
+import io.peltas.core.alfresco.StringToMapUtil;
 import io.peltas.core.alfresco.integration.PeltasHandler;
 
 public class ContainsExpressionEvaluator extends AbstractEvalatorExpression {
@@ -31,4 +32,10 @@ public class ContainsExpressionEvaluator extends AbstractEvalatorExpression {
 		List<Object> mappedMultiValueProperty = PeltasHandler.getMappedMultiValueProperty(evaluatorKey, auditEntry);
 		return mappedMultiValueProperty.contains(evaluatorValue);
 	}
+
+	@Override
+	public boolean isValueMapped(EvaluatorCondition condition, PeltasEntry auditEntry) {
+		Object value = auditEntry.getValues().get(condition.getPath());
+		return StringToMapUtil.valueAsList(value, ',').contains(condition.getValue());
+	}
 }
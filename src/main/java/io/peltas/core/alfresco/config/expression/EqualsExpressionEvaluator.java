@@ -33,4 +33,12 @@ public class EqualsExpressionEvaluator extends AbstractEvalatorExpression {
 		}
 		return false;
 	}
+
+	@Override
+	public boolean isValueMapped(EvaluatorCondition condition, PeltasEntry auditEntry) {
+		Object mappedValue = PeltasHandler.getMappedSingleValueProperty(condition.getPath(), condition.getNestedKey(),
+				auditEntry);
+
+		return mappedValue != null && mappedValue.equals(condition.getValue());
+	}
 }
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.peltas.core.alfresco.config.expression;
+
+import org.springframework.util.StringUtils;
+
+import io.peltas.core.alfresco.PeltasEntry;
+import io.peltas.core.alfresco.integration.PeltasHandler;
+
+/**
+ * A single evaluator condition (one part of a <code>|</code> separated handler
+ * evaluator) compiled once at startup: the audit path is already split on
+ * <code>@</code>, the expression is resolved and the expected value is stored.
+ */
+public final class EvaluatorCondition {
+
+	private final String key;
+	private final String path;
+	private final String nestedKey;
+	private final String value;
+	private final AbstractEvalatorExpression expression;
+
+	private EvaluatorCondition(String key, String value, AbstractEvalatorExpression expression) {
+		this.key = key;
+		this.value = value;
+		this.expression = expression;
+
+		if (key.contains("@")) {
+			String[] keyDelimited = StringUtils.delimitedListToStringArray(key, "@");
+			this.path = keyDelimited[0];
+			this.nestedKey = keyDelimited[1];
+		} else {
+			this.path = key;
+			this.nestedKey = null;
+		}
+	}
+
+	public static EvaluatorCondition[] compileAll(String evaluator, EvaluatorExpressionRegistry registry) {
+		String[] evaluators;
+		if (evaluator.contains("|")) {
+			evaluators = StringUtils.delimitedListToStringArray(evaluator, "|");
+		} else {
+			evaluators = new String[] { evaluator };
+		}
+
+		EvaluatorCondition[] conditions = new EvaluatorCondition[evaluators.length];
+		for (int i = 0; i < evaluators.length; i++) {
+			conditions[i] = compile(evaluators[i], registry);
+		}
+		return conditions;
+	}
+
+	public static EvaluatorCondition compile(String eval, EvaluatorExpressionRegistry registry) {
+		if (!eval.contains("=")) {
+			return new EvaluatorCondition(eval, null, null);
+		}
+
+		String[] evalKeyVal = StringUtils.delimitedListToStringArray(eval, "=");
+		String evalKeyRight = evalKeyVal[1];
+
+		String[] expressionKeyVal = StringUtils.delimitedListToStringArray(evalKeyRight, "<>");
+		String expression = null;
+		if (expressionKeyVal.length > 1) {
+			expression = expressionKeyVal[0].trim();
+			evalKeyRight = evalKeyRight.replaceFirst(expression + "<>", "").trim();
+		}
+
+		return new EvaluatorCondition(evalKeyVal[0], evalKeyRight, registry.getEvaluatorExpression(expression));
+	}
+
+	public boolean matches(PeltasEntry auditEntry) {
+		if (expression == null) {
+			return PeltasHandler.getMappedSingleValueProperty(path, nestedKey, auditEntry) != null;
+		}
+		return expression.isValueMapped(this, auditEntry);
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public String getNestedKey() {
+		return nestedKey;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	public AbstractEvalatorExpression getExpression() {
+		return expression;
+	}
+
+	public boolean isPresenceOnly() {
+		return expression == null;
+	}
+
+	@Override
+	public String toString() {
+		return "EvaluatorCondition [key=" + key + ", value=" + value + ", expression="
+				+ (expression != null ? expression.getExpression() : null) + "]";
+	}
+}
@@ -16,6 +16,9 @@
 
 package io.peltas.core.alfresco.integration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.integration.annotation.ServiceActivator;
@@ -33,4 +36,17 @@ public class DoNotProcessHandler {
 		return new NotProcessableEntry();
 	}
 
+	@ServiceActivator(inputChannel = "donotprocess.chunk")
+	public List<Object> handleChunk(Message<List<Message<PeltasEntry>>> message) {
+		return handleAll(message.getPayload());
+	}
+
+	public List<Object> handleAll(List<Message<PeltasEntry>> messages) {
+		final List<Object> entries = new ArrayList<>(messages.size());
+		for (final Message<PeltasEntry> message : messages) {
+			entries.add(handle(message));
+		}
+		return entries;
+	}
+
 }
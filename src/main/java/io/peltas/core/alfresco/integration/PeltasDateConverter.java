@@ -0,0 +1,149 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.peltas.core.alfresco.integration;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+/**
+ * Thread-safe <code>String &lt;-&gt; Date</code> conversion. When no pattern is
+ * given the audit format is picked from the shape of the value (the old audit
+ * <code>Date.toString()</code> or the v1 ISO-8601 timestamp) and parsed with
+ * an immutable {@link DateTimeFormatter} instead of trying the formats one
+ * after the other. The configured patterns are {@link SimpleDateFormat}
+ * patterns and keep its semantics (lenient parsing, <code>u</code> as the day
+ * of the week, ...), the instances are cached per thread and pattern.
+ */
+public class PeltasDateConverter {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PeltasDateConverter.class);
+
+	public static final String OLD_AUDIT_FORMAT = "EEE MMM dd HH:mm:ss zzz yyyy";
+	public static final String V1_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+	public static final String V1_LOCAL_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS";
+
+	private static final int V1_OFFSET_INDEX = V1_LOCAL_FORMAT.length() - 2;
+	private static final int MAX_CACHED_FORMATS = 64;
+
+	private static final DateTimeFormatter OLD_AUDIT_PARSER = auditParser(OLD_AUDIT_FORMAT);
+	private static final DateTimeFormatter V1_PARSER = auditParser(V1_FORMAT);
+	private static final DateTimeFormatter V1_LOCAL_PARSER = auditParser(V1_LOCAL_FORMAT);
+
+	private final ThreadLocal<Map<String, DateFormat>> parsers = ThreadLocal.withInitial(HashMap::new);
+	private final ThreadLocal<Map<String, DateFormat>> formatters = ThreadLocal.withInitial(HashMap::new);
+
+	public Date parse(String source, String format) {
+		if (!StringUtils.hasText(format)) {
+			return parseAudit(source);
+		}
+
+		LOGGER.trace("converting String -> Date: {} with format: {}", source, format);
+		try {
+			return dateFormat(parsers, format, Locale.ENGLISH).parse(source);
+		} catch (final ParseException | IllegalArgumentException e) {
+			throw new PeltasConversionException(e);
+		}
+	}
+
+	public String format(Date source, String format) {
+		if (!StringUtils.hasText(format)) {
+			throw new PeltasConversionException(
+					new IllegalArgumentException("a format is required to convert Date -> String: " + source));
+		}
+
+		LOGGER.trace("converting Date -> String: {} with format: {}", source, format);
+		try {
+			return dateFormat(formatters, format, Locale.getDefault()).format(source);
+		} catch (final IllegalArgumentException e) {
+			throw new PeltasConversionException(e);
+		}
+	}
+
+	static String detectFormat(String source) {
+		if (source.length() > 10 && source.charAt(4) == '-' && source.charAt(7) == '-' && source.charAt(10) == 'T') {
+			if (source.length() > V1_OFFSET_INDEX
+					&& (source.charAt(V1_OFFSET_INDEX) == '+' || source.charAt(V1_OFFSET_INDEX) == '-')) {
+				return V1_FORMAT;
+			}
+			return V1_LOCAL_FORMAT;
+		}
+		return OLD_AUDIT_FORMAT;
+	}
+
+	private static Date parseAudit(String source) {
+		String format = detectFormat(source);
+		DateTimeFormatter parser = V1_FORMAT.equals(format) ? V1_PARSER
+				: V1_LOCAL_FORMAT.equals(format) ? V1_LOCAL_PARSER : OLD_AUDIT_PARSER;
+
+		LOGGER.trace("converting String -> Date: {} with format: {}", source, format);
+		try {
+			return toDate(parser.parse(source, new ParsePosition(0)));
+		} catch (final DateTimeException e) {
+			throw new PeltasConversionException(e);
+		}
+	}
+
+	private static DateTimeFormatter auditParser(String format) {
+		return DateTimeFormatter.ofPattern(format, Locale.ENGLISH).withZone(ZoneId.systemDefault());
+	}
+
+	// SimpleDateFormat is not thread-safe, one instance per thread and pattern
+	private static DateFormat dateFormat(ThreadLocal<Map<String, DateFormat>> cache, String format, Locale locale) {
+		Map<String, DateFormat> dateFormats = cache.get();
+		DateFormat dateFormat = dateFormats.get(format);
+		if (dateFormat == null) {
+			dateFormat = new SimpleDateFormat(format, locale);
+			if (dateFormats.size() < MAX_CACHED_FORMATS) {
+				dateFormats.put(format, dateFormat);
+			}
+		}
+		return dateFormat;
+	}
+
+	private static Date toDate(TemporalAccessor parsed) {
+		if (parsed.isSupported(ChronoField.INSTANT_SECONDS)) {
+			return Date.from(Instant.from(parsed));
+		}
+
+		LocalDate date = parsed.query(TemporalQueries.localDate());
+		LocalTime time = parsed.query(TemporalQueries.localTime());
+		if (date == null) {
+			throw new DateTimeException("no date could be parsed from: " + parsed);
+		}
+		return Date.from(date.atTime(time != null ? time : LocalTime.MIDNIGHT).atZone(ZoneId.systemDefault())
+				.toInstant());
+	}
+}
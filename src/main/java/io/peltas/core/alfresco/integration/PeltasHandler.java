@@ -16,18 +16,15 @@
 
 package io.peltas.core.alfresco.integration;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,7 +51,9 @@ public class PeltasHandler {
 
 	private final DefaultFormattingConversionService conversionService;
 
-	private final ThreadLocal<String> CURRENT_FORMAT = new ThreadLocal<>();
+	private final PeltasDateConverter dateConverter = new PeltasDateConverter();
+
+	private final Map<PeltasMapper, PeltasMappingPlan> mappingPlans = new ConcurrentHashMap<>();
 
 	public PeltasHandler() {
 		this.conversionService = new DefaultFormattingConversionService();
@@ -65,54 +64,25 @@ public class PeltasHandler {
 			public HashMap<String, Object> convert(String source) {
 				LOGGER.trace("converting String -> HashMap: {}", source);
 
-				final HashMap<String, Object> map = new HashMap<>();
-				if (StringUtils.hasText(source)) {
-					final Map<String, Object> stringToMap = StringToMapUtil.stringToMap(source, ',');
-					map.putAll(stringToMap);
+				if (!StringUtils.hasText(source)) {
+					return new HashMap<>();
 				}
-
-				return map;
+				// nested maps and arrays parsed in the same pass
+				return StringToMapUtil.stringToStructuredMap(source, ',');
 			}
 		});
 
 		this.conversionService.addConverter(new Converter<String, Date>() {
 			@Override
 			public Date convert(String source) {
-				final String initialFormat = CURRENT_FORMAT.get();
-				String format = initialFormat;
-				if (!StringUtils.hasText(format)) {
-					format = "EEE MMM dd HH:mm:ss zzz yyyy"; // old audit
-				}
-				try {
-					LOGGER.trace("converting String -> Date: {} with format: {}", source, format);
-					return new SimpleDateFormat(format, Locale.ENGLISH).parse(source);
-				} catch (final ParseException e) {
-					if (StringUtils.hasText(initialFormat)) {
-						throw new PeltasConversionException(e);
-					}
-					format = "yyyy-MM-dd'T'HH:mm:ss.SSSZ"; // v1
-					try {
-						LOGGER.trace("converting String -> Date: {} with format: {}", source, format);
-						return new SimpleDateFormat(format).parse(source);
-					} catch (final ParseException e1) {
-						try {
-							format = "yyyy-MM-dd'T'HH:mm:ss.SSS";
-							LOGGER.trace("converting String -> Date: {} with format: {}", source, format);
-							return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS").parse(source);
-						} catch (final ParseException e2) {
-							throw new PeltasConversionException(e2);
-						}
-					}
-				}
+				return dateConverter.parse(source, null);
 			}
 		});
 
 		this.conversionService.addConverter(new Converter<Date, String>() {
 			@Override
 			public String convert(Date source) {
-				final String format = CURRENT_FORMAT.get();
-				LOGGER.trace("converting Date -> String: {} with format: {}", source, format);
-				return new SimpleDateFormat(format).format(source);
+				return dateConverter.format(source, null);
 			}
 		});
 
@@ -147,11 +117,9 @@ public class PeltasHandler {
 				.get("alfresco.handler.configuration");
 
 		final PeltasMapper mapper = config.getMapper();
-		final Map<String, Object> mappedProperties = new HashMap<>();
 		try {
-
 			final Map<String, PeltasExpresionProperty> configuredProperties = mapper.getProperty();
-			processProperties(auditEntry, configuredProperties, mappedProperties);
+			final Map<String, Object> mappedProperties = getMappingPlan(mapper).map(auditEntry, this);
 
 			LOGGER.trace("handle() properties configured {}", configuredProperties);
 			LOGGER.debug("handle() properties mapped {}", mappedProperties);
@@ -162,66 +130,32 @@ public class PeltasHandler {
 
 	}
 
-	private void processProperties(PeltasEntry auditEntry, Map<String, PeltasExpresionProperty> properties,
-			Map<String, Object> builder) {
-		final Set<Entry<String, PeltasExpresionProperty>> propertyEntries = properties.entrySet();
-
-		final Map<String, PeltasExpresionProperty> postProcessProps = new HashMap<>();
-
-		for (final Entry<String, PeltasExpresionProperty> entry : propertyEntries) {
-
-			final String key = entry.getKey();
-			final PeltasExpresionProperty expresionProperty = entry.getValue();
-			final List<String> exprData = expresionProperty.getData();
-			final List<Object> dataValues = new ArrayList<>();
-			for (String data : exprData) {
-				data = data.trim();
-
-				Object value = null;
-				if (data.startsWith("prop:")) {
-					postProcessProps.put(key, expresionProperty);
-					continue;
-				}
-
-				if ((data.startsWith("\"") && data.endsWith("\"")) || (data.startsWith("'") && data.endsWith("'"))) {
-					value = data.substring(1, data.length() - 1).trim();
-				} else {
-					value = getMappedSingleValueProperty(data, auditEntry);
-				}
-
-				if (value != null) {
-					dataValues.add(value);
-				}
-			}
-
-			convertStringValues(builder, key, expresionProperty, dataValues);
-		}
+	/**
+	 * maps the entries of a chunk routed to this handler at once
+	 */
+	@ServiceActivator(inputChannel = "auditprocess.chunk")
+	public List<PeltasDataHolder> handleChunk(Message<List<Message<PeltasEntry>>> message) {
+		return handleAll(message.getPayload());
+	}
 
-		if (!postProcessProps.isEmpty()) {
-			postProcessProperties(auditEntry, postProcessProps, builder);
+	public List<PeltasDataHolder> handleAll(List<Message<PeltasEntry>> messages) {
+		final List<PeltasDataHolder> holders = new ArrayList<>(messages.size());
+		for (final Message<PeltasEntry> message : messages) {
+			holders.add(handle(message));
 		}
+		return holders;
 	}
 
-	private void convertStringValues(Map<String, Object> builder, String key, PeltasExpresionProperty expresionProperty,
-			List<Object> dataValues) {
-		Object value = null;
-		if (dataValues != null && !dataValues.isEmpty()) {
-			final String format = expresionProperty.getFormat();
-			if (StringUtils.hasText(format) && String.class.isAssignableFrom(expresionProperty.getType())) {
-				value = String.format(format, dataValues.toArray());
-			} else {
-				if (dataValues.size() == 1) {
-					value = dataValues.get(0);
-				} else {
-					throw new IllegalArgumentException(
-							"Check the format! Datavalues not supported for: " + dataValues + " and format: " + format);
-				}
-			}
+	private PeltasMappingPlan getMappingPlan(PeltasMapper mapper) {
+		PeltasMappingPlan plan = mappingPlans.get(mapper);
+		if (plan == null) {
+			plan = PeltasMappingPlan.compile(mapper);
+			mappingPlans.putIfAbsent(mapper, plan);
 		}
-		convertValue(value, builder, key, expresionProperty);
+		return plan;
 	}
 
-	private void convertValue(Object value, Map<String, Object> builder, String key,
+	void convertValue(Object value, Map<String, Object> builder, String key,
 			PeltasExpresionProperty expresionProperty) {
 		if (value == null) {
 			builder.put(key, null);
@@ -235,12 +169,16 @@ public class PeltasHandler {
 			// null){
 			// return;
 			// }
-			CURRENT_FORMAT.set(format);
 			LOGGER.trace("convertValue() converting {} -> {} value {} using format {}", value.getClass(), convertClass,
 					value, format);
-			value = conversionService.convert(value, convertClass);
+			if (value instanceof String && convertClass == Date.class) {
+				value = dateConverter.parse((String) value, format);
+			} else if (value instanceof Date && convertClass == String.class) {
+				value = dateConverter.format((Date) value, format);
+			} else {
+				value = conversionService.convert(value, convertClass);
+			}
 			LOGGER.trace("convertValue() converted {}", value);
-			CURRENT_FORMAT.set(null);
 		}
 
 		if (value != null) {
@@ -258,76 +196,39 @@ public class PeltasHandler {
 		}
 	}
 
-	private void postProcessProperties(PeltasEntry auditEntry, Map<String, PeltasExpresionProperty> properties,
-			Map<String, Object> builder) {
-
-		final Set<Entry<String, PeltasExpresionProperty>> propertyEntries = properties.entrySet();
-		for (final Entry<String, PeltasExpresionProperty> entry : propertyEntries) {
-			final PeltasExpresionProperty expresionProperty = entry.getValue();
-
-			final List<String> exprData = expresionProperty.getData();
-			if (exprData.size() == 0) {
-				throw new RuntimeException("an evaluated property (prop:) does not support empty data values");
-			}
-
-			if (exprData.size() == 1) {
-				for (final String data : exprData) {
-					final String replacedData = data.replaceFirst("prop:", "");
-					Object value = builder.get(replacedData);
-
-					final String[] keyDelimited = StringUtils.delimitedListToStringArray(replacedData, "@");
-					if (keyDelimited.length > 1) {
-
-						final Map<?, ?> map = (Map<?, ?>) builder.get(keyDelimited[0]);
-						value = map.get(keyDelimited[1]);
-					}
-
-					if (value != null) {
-						final Class<?> convertClass = expresionProperty.getType();
-						if (convertClass != null) {
-							convertValue(value, builder, entry.getKey(), expresionProperty);
-						}
-					}
-				}
-			} else {
-				final List<Object> dataValues = new ArrayList<>();
-				for (final String data : exprData) {
-					final String replacedData = data.replaceFirst("prop:", "");
-					final String[] keyDelimited = StringUtils.delimitedListToStringArray(replacedData, "@");
-					final Map<?, ?> map = (Map<?, ?>) builder.get(keyDelimited[0]);
-					dataValues.add(map.get(keyDelimited[1]));
-				}
-
-				convertStringValues(builder, entry.getKey(), expresionProperty, dataValues);
-			}
-
-		}
-	}
-
 	public static Object getMappedSingleValueProperty(String value, PeltasEntry auditEntry) {
 		LOGGER.trace("getMappedSingleValueProperty() retreiving {} from {}", value, auditEntry);
 
 		if (value.contains("@")) {
 			final String[] keyDelimited = StringUtils.delimitedListToStringArray(value, "@");
-			final Object ret = auditEntry.getValues().get(keyDelimited[0]);
-			if (ret instanceof Map) {
-				return ((Map<String, Object>) ret).get(keyDelimited[1]);
-			} else if (ret instanceof String) {
-				throw new RuntimeException("should be in audit");
-//				final String valuesMapString = (String) ret;
-//				if (valuesMapString != null) {
-//					final Map<String, String> stringToMap = AlfrescoAuditUtil.stringToMap(valuesMapString);
-//					return stringToMap.get(keyDelimited[1]);
-//				}
-			}
-
-			return "";
+			return getMappedSingleValueProperty(keyDelimited[0], keyDelimited[1], auditEntry);
 		} else {
 			return auditEntry.getValues().get(value);
 		}
 
 	}
 
+	public static Object getMappedSingleValueProperty(String path, String nestedKey, PeltasEntry auditEntry) {
+		final Object ret = auditEntry.getValues().get(path);
+		if (nestedKey == null) {
+			return ret;
+		}
+
+		final Map<String, Object> map = auditEntry.getValueAsMap(path);
+		if (map != null) {
+			return map.get(nestedKey);
+		} else if (ret instanceof String) {
+			throw new RuntimeException("should be in audit");
+//			final String valuesMapString = (String) ret;
+//			if (valuesMapString != null) {
+//				final Map<String, String> stringToMap = AlfrescoAuditUtil.stringToMap(valuesMapString);
+//				return stringToMap.get(nestedKey);
+//			}
+		}
+
+		return "";
+	}
+
 	public static List<Object> getMappedMultiValueProperty(String value, PeltasEntry auditEntry) {
 		LOGGER.trace("getMappedMultiValueProperty() retreiving {} from {}", value, auditEntry);
 
@@ -0,0 +1,322 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.peltas.core.alfresco.integration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.springframework.util.StringUtils;
+
+import io.peltas.core.alfresco.PeltasEntry;
+import io.peltas.core.alfresco.PeltasException;
+import io.peltas.core.alfresco.config.PeltasExpresionProperty;
+import io.peltas.core.alfresco.config.PeltasMapper;
+
+/**
+ * A {@link PeltasMapper} compiled into an ordered list of typed steps. The
+ * data expressions of every property are interpreted once: literals, audit
+ * path and nested map lookups are resolved to value sources, the format and
+ * conversion are decided and <code>prop:</code> properties are ordered after
+ * the properties they are derived from.
+ */
+final class PeltasMappingPlan {
+
+	private static final String PROP_PREFIX = "prop:";
+
+	private final PropertyStep[] steps;
+	private final PropertyStep[] derivedSteps;
+	private final int capacity;
+
+	private PeltasMappingPlan(PropertyStep[] steps, PropertyStep[] derivedSteps) {
+		this.steps = steps;
+		this.derivedSteps = derivedSteps;
+		this.capacity = (int) (steps.length / 0.75f) + 1;
+	}
+
+	static PeltasMappingPlan compile(PeltasMapper mapper) {
+		Map<String, PeltasExpresionProperty> properties = mapper.getProperty();
+
+		List<PropertyStep> steps = new ArrayList<>(properties.size());
+		Map<String, DerivedStep> derivedSteps = new LinkedHashMap<>();
+		for (Entry<String, PeltasExpresionProperty> entry : properties.entrySet()) {
+			String key = entry.getKey();
+			PeltasExpresionProperty property = entry.getValue();
+
+			List<ValueSource> sources = new ArrayList<>();
+			boolean derived = false;
+			for (String data : property.getData()) {
+				data = data.trim();
+				if (data.startsWith(PROP_PREFIX)) {
+					derived = true;
+				} else if ((data.startsWith("\"") && data.endsWith("\""))
+						|| (data.startsWith("'") && data.endsWith("'"))) {
+					sources.add(new LiteralSource(data.substring(1, data.length() - 1).trim()));
+				} else if (data.contains("@")) {
+					String[] keyDelimited = StringUtils.delimitedListToStringArray(data, "@");
+					sources.add(new NestedAuditPathSource(keyDelimited[0], keyDelimited[1]));
+				} else {
+					sources.add(new AuditPathSource(data));
+				}
+			}
+
+			steps.add(new ExtractStep(key, property, sources.toArray(new ValueSource[sources.size()])));
+			if (derived) {
+				derivedSteps.put(key, compileDerived(key, property));
+			}
+		}
+
+		return new PeltasMappingPlan(steps.toArray(new PropertyStep[steps.size()]), sortDerived(derivedSteps));
+	}
+
+	private static DerivedStep compileDerived(String key, PeltasExpresionProperty property) {
+		List<String> exprData = property.getData();
+		ValueSource[] sources = new ValueSource[exprData.size()];
+		for (int i = 0; i < sources.length; i++) {
+			String replacedData = exprData.get(i).trim().replaceFirst(PROP_PREFIX, "");
+			String[] keyDelimited = StringUtils.delimitedListToStringArray(replacedData, "@");
+			if (keyDelimited.length > 1) {
+				sources[i] = new NestedPropertySource(keyDelimited[0], keyDelimited[1]);
+			} else if (sources.length == 1) {
+				sources[i] = new PropertySource(replacedData);
+			} else {
+				throw new PeltasException("an evaluated property (prop:) with multiple data values requires the "
+						+ "property@key notation: " + key + " -> " + exprData);
+			}
+		}
+		return new DerivedStep(key, property, sources);
+	}
+
+	private static PropertyStep[] sortDerived(Map<String, DerivedStep> derivedSteps) {
+		Set<String> sorted = new LinkedHashSet<>();
+		Set<String> visiting = new LinkedHashSet<>();
+		for (String key : derivedSteps.keySet()) {
+			visitDerived(key, derivedSteps, visiting, sorted);
+		}
+
+		PropertyStep[] steps = new PropertyStep[sorted.size()];
+		int i = 0;
+		for (String key : sorted) {
+			steps[i++] = derivedSteps.get(key);
+		}
+		return steps;
+	}
+
+	private static void visitDerived(String key, Map<String, DerivedStep> derivedSteps, Set<String> visiting,
+			Set<String> sorted) {
+		if (sorted.contains(key)) {
+			return;
+		}
+		if (!visiting.add(key)) {
+			throw new PeltasException("cyclic evaluated property (prop:) dependency: " + visiting);
+		}
+
+		for (ValueSource source : derivedSteps.get(key).sources) {
+			String dependency = ((PropertySource) source).key;
+			if (derivedSteps.containsKey(dependency)) {
+				visitDerived(dependency, derivedSteps, visiting, sorted);
+			}
+		}
+
+		visiting.remove(key);
+		sorted.add(key);
+	}
+
+	Map<String, Object> map(PeltasEntry auditEntry, PeltasHandler handler) {
+		final Map<String, Object> builder = new HashMap<>(capacity);
+		for (PropertyStep step : steps) {
+			step.apply(auditEntry, builder, handler);
+		}
+		for (PropertyStep step : derivedSteps) {
+			step.apply(auditEntry, builder, handler);
+		}
+		return builder;
+	}
+
+	private interface ValueSource {
+		Object resolve(PeltasEntry auditEntry, Map<String, Object> builder);
+	}
+
+	private static final class LiteralSource implements ValueSource {
+		private final String value;
+
+		LiteralSource(String value) {
+			this.value = value;
+		}
+
+		@Override
+		public Object resolve(PeltasEntry auditEntry, Map<String, Object> builder) {
+			return value;
+		}
+	}
+
+	private static final class AuditPathSource implements ValueSource {
+		private final String path;
+
+		AuditPathSource(String path) {
+			this.path = path;
+		}
+
+		@Override
+		public Object resolve(PeltasEntry auditEntry, Map<String, Object> builder) {
+			return auditEntry.getValues().get(path);
+		}
+	}
+
+	private static final class NestedAuditPathSource implements ValueSource {
+		private final String path;
+		private final String nestedKey;
+
+		NestedAuditPathSource(String path, String nestedKey) {
+			this.path = path;
+			this.nestedKey = nestedKey;
+		}
+
+		@Override
+		public Object resolve(PeltasEntry auditEntry, Map<String, Object> builder) {
+			return PeltasHandler.getMappedSingleValueProperty(path, nestedKey, auditEntry);
+		}
+	}
+
+	private static class PropertySource implements ValueSource {
+		protected final String key;
+
+		PropertySource(String key) {
+			this.key = key;
+		}
+
+		@Override
+		public Object resolve(PeltasEntry auditEntry, Map<String, Object> builder) {
+			return builder.get(key);
+		}
+	}
+
+	private static final class NestedPropertySource extends PropertySource {
+		private final String nestedKey;
+
+		NestedPropertySource(String key, String nestedKey) {
+			super(key);
+			this.nestedKey = nestedKey;
+		}
+
+		@Override
+		public Object resolve(PeltasEntry auditEntry, Map<String, Object> builder) {
+			final Map<?, ?> map = (Map<?, ?>) builder.get(key);
+			return map.get(nestedKey);
+		}
+	}
+
+	private abstract static class PropertyStep {
+		protected final String key;
+		protected final PeltasExpresionProperty property;
+		protected final ValueSource[] sources;
+		private final String format;
+
+		PropertyStep(String key, PeltasExpresionProperty property, ValueSource[] sources) {
+			this.key = key;
+			this.property = property;
+			this.sources = sources;
+
+			String format = property.getFormat();
+			this.format = StringUtils.hasText(format) && property.getType() != null
+					&& String.class.isAssignableFrom(property.getType()) ? format : null;
+		}
+
+		abstract void apply(PeltasEntry auditEntry, Map<String, Object> builder, PeltasHandler handler);
+
+		protected Object format(Object dataValue) {
+			if (format != null) {
+				return String.format(format, new Object[] { dataValue });
+			}
+			return dataValue;
+		}
+
+		protected Object format(Object[] dataValues, int size) {
+			if (size == 0) {
+				return null;
+			}
+
+			if (format != null) {
+				return String.format(format, size == dataValues.length ? dataValues : Arrays.copyOf(dataValues, size));
+			}
+
+			if (size == 1) {
+				return dataValues[0];
+			}
+
+			throw new IllegalArgumentException("Check the format! Datavalues not supported for: "
+					+ Arrays.asList(dataValues).subList(0, size) + " and format: " + property.getFormat());
+		}
+	}
+
+	private static final class ExtractStep extends PropertyStep {
+
+		ExtractStep(String key, PeltasExpresionProperty property, ValueSource[] sources) {
+			super(key, property, sources);
+		}
+
+		@Override
+		void apply(PeltasEntry auditEntry, Map<String, Object> builder, PeltasHandler handler) {
+			Object value;
+			if (sources.length == 1) {
+				value = sources[0].resolve(auditEntry, builder);
+				value = value != null ? format(value) : null;
+			} else {
+				final Object[] dataValues = new Object[sources.length];
+				int size = 0;
+				for (ValueSource source : sources) {
+					Object dataValue = source.resolve(auditEntry, builder);
+					if (dataValue != null) {
+						dataValues[size++] = dataValue;
+					}
+				}
+				value = format(dataValues, size);
+			}
+			handler.convertValue(value, builder, key, property);
+		}
+	}
+
+	private static final class DerivedStep extends PropertyStep {
+
+		DerivedStep(String key, PeltasExpresionProperty property, ValueSource[] sources) {
+			super(key, property, sources);
+		}
+
+		@Override
+		void apply(PeltasEntry auditEntry, Map<String, Object> builder, PeltasHandler handler) {
+			if (sources.length == 1) {
+				Object value = sources[0].resolve(auditEntry, builder);
+				if (value != null && property.getType() != null) {
+					handler.convertValue(value, builder, key, property);
+				}
+				return;
+			}
+
+			final Object[] dataValues = new Object[sources.length];
+			for (int i = 0; i < sources.length; i++) {
+				dataValues[i] = sources[i].resolve(auditEntry, builder);
+			}
+			handler.convertValue(format(dataValues, dataValues.length), builder, key, property);
+		}
+	}
+}
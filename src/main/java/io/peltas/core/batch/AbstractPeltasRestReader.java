@@ -17,12 +17,18 @@
 package io.peltas.core.batch;
 
 import java.lang.reflect.ParameterizedType;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.item.ParseException;
 import org.springframework.batch.item.UnexpectedInputException;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
@@ -34,6 +40,15 @@ public abstract class AbstractPeltasRestReader<T, R> extends PeltasItemReader<T>
 
 	protected final RestTemplate restTemplate;
 
+	private int pageSize = 0;
+	private int lastPageSize = 0;
+
+	private int prefetchPages = 0;
+	private TaskExecutor taskExecutor;
+	// pages requested ahead of the one being read, in reading order
+	private final Deque<CompletableFuture<List<T>>> prefetched = new ArrayDeque<>();
+	private CompletableFuture<List<T>> lastRequested;
+
 	public AbstractPeltasRestReader(final String applicationName, final RestTemplate restTemplate) {
 		super(applicationName);
 		this.restTemplate = restTemplate;
@@ -54,11 +69,115 @@ public abstract class AbstractPeltasRestReader<T, R> extends PeltasItemReader<T>
 
 	@Override
 	protected void onOpen() {
+		cancelPrefetched();
+
+		List<T> collection = fetch(getQueryString());
+		lastPageSize = collection != null ? collection.size() : 0;
+		setList(collection);
+
+		if (isPrefetching()) {
+			lastRequested = CompletableFuture.completedFuture(collection);
+			prefetch();
+		}
+	}
+
+	/**
+	 * requests the page after <code>lastEntry</code>, a page shorter than the
+	 * page size being the last one
+	 */
+	@Override
+	protected List<T> readNextPage(T lastEntry) throws Exception {
+		if (isPrefetching()) {
+			return nextPrefetched();
+		}
+
+		if (!isPaged() || lastPageSize < pageSize) {
+			return null;
+		}
+
+		String queryString = getNextPageQueryString(lastEntry);
+		if (queryString == null) {
+			return null;
+		}
+		List<T> collection = fetch(queryString);
+		lastPageSize = collection != null ? collection.size() : 0;
+		return collection;
+	}
+
+	private List<T> nextPrefetched() throws Exception {
+		CompletableFuture<List<T>> next = prefetched.poll();
+		if (next == null) {
+			return null;
+		}
+
+		List<T> collection;
+		try {
+			collection = next.join();
+		} catch (CompletionException e) {
+			// a failed page fails all the following ones, so errors surface in order
+			cancelPrefetched();
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+
+		if (collection == null || collection.isEmpty()) {
+			cancelPrefetched();
+		} else {
+			prefetch();
+		}
+		return collection;
+	}
+
+	/**
+	 * requests the following pages in the background until
+	 * {@link #getPrefetchPages()} of them are in flight or waiting to be read.
+	 * Each page is requested after the previous one arrives, as its query string
+	 * depends on the last entry of the previous page.
+	 */
+	private void prefetch() {
+		while (prefetched.size() < prefetchPages && lastRequested != null) {
+			lastRequested = lastRequested.thenApplyAsync(this::fetchAfter, getTaskExecutor());
+			prefetched.add(lastRequested);
+		}
+	}
+
+	private List<T> fetchAfter(List<T> previous) {
+		if (previous == null || previous.size() < pageSize) {
+			return null;
+		}
+
+		String queryString = getNextPageQueryString(previous.get(previous.size() - 1));
+		if (queryString == null) {
+			return null;
+		}
+		return fetch(queryString);
+	}
+
+	private void cancelPrefetched() {
+		for (CompletableFuture<List<T>> future : prefetched) {
+			future.cancel(false);
+		}
+		prefetched.clear();
+		lastRequested = null;
+	}
+
+	@Override
+	protected void doClose() throws Exception {
+		cancelPrefetched();
+		super.doClose();
+	}
+
+	/**
+	 * requests a single page, called from the prefetching threads as well when
+	 * prefetching is enabled
+	 */
+	protected List<T> fetch(String queryString) {
 		@SuppressWarnings("unchecked")
 		Class<R> responseClass = (Class<R>) ((ParameterizedType) getClass().getGenericSuperclass())
 				.getActualTypeArguments()[1];
 
-		String queryString = getQueryString();
 		HttpMethod httpMethod = getHttpMethod();
 		HttpEntity<?> httpEntity = getHttpEntity();
 		LOGGER.trace("METHOD: {} - QUERY: {} - ENTITY {}", httpMethod.name(), queryString, httpEntity);
@@ -66,8 +185,7 @@ public abstract class AbstractPeltasRestReader<T, R> extends PeltasItemReader<T>
 		R entries = response.getBody();
 		entries = onResponseReceived(entries);
 
-		List<T> collection = retreiveCollection(entries);
-		setList(collection);
+		return retreiveCollection(entries);
 	}
 
 	abstract protected List<T> retreiveCollection(R response);
@@ -78,6 +196,16 @@ public abstract class AbstractPeltasRestReader<T, R> extends PeltasItemReader<T>
 
 	abstract protected String getQueryString();
 
+	/**
+	 * query string of the page following <code>lastEntry</code> (e.g. starting
+	 * after its id and limited to {@link #getPageSize()} entries), used only when
+	 * paging is enabled. Returning <code>null</code> ends the reading. When
+	 * prefetching, it is called from the prefetching threads.
+	 */
+	protected String getNextPageQueryString(T lastEntry) {
+		return null;
+	}
+
 	protected HttpEntity<?> getHttpEntity() {
 		return new HttpEntity<>("");
 	}
@@ -86,6 +214,52 @@ public abstract class AbstractPeltasRestReader<T, R> extends PeltasItemReader<T>
 		return HttpMethod.GET;
 	}
 
+	@Override
+	protected boolean isPaged() {
+		return pageSize > 0;
+	}
+
+	/**
+	 * the number of entries requested per page, <code>0</code> (default) reads
+	 * the whole response of {@link #getQueryString()} at once
+	 */
+	public void setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	private boolean isPrefetching() {
+		return isPaged() && prefetchPages > 0;
+	}
+
+	/**
+	 * the number of pages requested ahead of the one being read, bounding the
+	 * memory held to <code>(prefetchPages + 1) * pageSize</code> entries.
+	 * <code>0</code> (default) requests each page once the previous one is read.
+	 * Only used when paging is enabled.
+	 */
+	public void setPrefetchPages(int prefetchPages) {
+		this.prefetchPages = prefetchPages;
+	}
+
+	public int getPrefetchPages() {
+		return prefetchPages;
+	}
+
+	public void setTaskExecutor(TaskExecutor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+	public TaskExecutor getTaskExecutor() {
+		if (taskExecutor == null) {
+			taskExecutor = new SimpleAsyncTaskExecutor(getApplicationName() + "-prefetch-");
+		}
+		return taskExecutor;
+	}
+
 	public RestTemplate getRestTemplate() {
 		return restTemplate;
 	}
@@ -0,0 +1,258 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.batch;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.peltas.core.alfresco.PeltasEntry;
+import io.peltas.core.alfresco.PeltasEntryJsonReader;
+
+/**
+ * Reads the audit entries while the response is still being received: a
+ * background task walks the response body with {@link PeltasEntryJsonReader}
+ * and hands the entries over through a buffer of {@link #getBufferSize()}
+ * entries, which bounds the memory held whatever the size of the response.
+ * <p>
+ * Errors of the request or of the parsing are thrown by {@link #read()} after
+ * the entries received before them. When a page size is set, the page after
+ * the last entry is requested with {@link #getNextPageQueryString(PeltasEntry)}
+ * once a full page is read.
+ */
+public abstract class AbstractPeltasStreamingRestReader extends PeltasItemReader<PeltasEntry> {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AbstractPeltasStreamingRestReader.class);
+
+	private static final Object END = new Object();
+
+	protected final RestTemplate restTemplate;
+
+	private final ObjectMapper objectMapper;
+
+	private int pageSize = 0;
+	private int bufferSize = 100;
+	private TaskExecutor taskExecutor;
+
+	private ResponseStream stream;
+	private int pageCount = 0;
+	private PeltasEntry lastEntry;
+
+	public AbstractPeltasStreamingRestReader(final String applicationName, final RestTemplate restTemplate) {
+		this(applicationName, restTemplate, Jackson2ObjectMapperBuilder.json().build());
+	}
+
+	public AbstractPeltasStreamingRestReader(final String applicationName, final RestTemplate restTemplate,
+			final ObjectMapper objectMapper) {
+		super(applicationName);
+		this.restTemplate = restTemplate;
+		this.objectMapper = objectMapper;
+	}
+
+	@Override
+	protected void onOpen() {
+		cancel();
+		setList(null);
+		request(getQueryString());
+	}
+
+	@Override
+	protected PeltasEntry doRead() throws Exception {
+		while (stream != null) {
+			Object next = stream.take();
+
+			if (next == END) {
+				stream = null;
+				if (pageSize > 0 && pageCount >= pageSize) {
+					String queryString = getNextPageQueryString(lastEntry);
+					if (queryString != null) {
+						request(queryString);
+					}
+				}
+			} else if (next instanceof Throwable) {
+				stream = null;
+				if (next instanceof Exception) {
+					throw (Exception) next;
+				}
+				throw (Error) next;
+			} else {
+				PeltasEntry entry = (PeltasEntry) next;
+				pageCount++;
+				lastCount++;
+				lastEntry = entry;
+				onRead(entry);
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	private void request(String queryString) {
+		HttpMethod httpMethod = getHttpMethod();
+		HttpEntity<?> httpEntity = getHttpEntity();
+		LOGGER.trace("METHOD: {} - QUERY: {} - ENTITY {}", httpMethod.name(), queryString, httpEntity);
+
+		pageCount = 0;
+		stream = new ResponseStream(queryString, httpMethod, httpEntity, bufferSize);
+		getTaskExecutor().execute(stream);
+	}
+
+	private void cancel() {
+		if (stream != null) {
+			stream.cancel();
+			stream = null;
+		}
+		lastEntry = null;
+	}
+
+	@Override
+	protected void doClose() throws Exception {
+		cancel();
+		super.doClose();
+	}
+
+	@Override
+	protected boolean isPaged() {
+		// the number of entries is not known in advance
+		return true;
+	}
+
+	abstract protected String getQueryString();
+
+	/**
+	 * query string of the page following <code>lastEntry</code>, used only when
+	 * a page size is set. Returning <code>null</code> ends the reading.
+	 */
+	protected String getNextPageQueryString(PeltasEntry lastEntry) {
+		return null;
+	}
+
+	protected HttpEntity<?> getHttpEntity() {
+		return new HttpEntity<>("");
+	}
+
+	protected HttpMethod getHttpMethod() {
+		return HttpMethod.GET;
+	}
+
+	public RestTemplate getRestTemplate() {
+		return restTemplate;
+	}
+
+	/**
+	 * the number of entries requested per page, <code>0</code> (default) reads
+	 * the whole response of {@link #getQueryString()}
+	 */
+	public void setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * the number of parsed entries waiting to be read, typically the chunk size
+	 */
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public void setTaskExecutor(TaskExecutor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+	public TaskExecutor getTaskExecutor() {
+		if (taskExecutor == null) {
+			taskExecutor = new SimpleAsyncTaskExecutor(getApplicationName() + "-stream-");
+		}
+		return taskExecutor;
+	}
+
+	private class ResponseStream implements Runnable {
+
+		private final String queryString;
+		private final HttpMethod httpMethod;
+		private final HttpEntity<?> httpEntity;
+		private final BlockingQueue<Object> buffer;
+
+		private volatile boolean cancelled = false;
+
+		ResponseStream(String queryString, HttpMethod httpMethod, HttpEntity<?> httpEntity, int bufferSize) {
+			this.queryString = queryString;
+			this.httpMethod = httpMethod;
+			this.httpEntity = httpEntity;
+			this.buffer = new ArrayBlockingQueue<>(bufferSize);
+		}
+
+		@Override
+		public void run() {
+			try {
+				restTemplate.execute(queryString, httpMethod, restTemplate.httpEntityCallback(httpEntity),
+						response -> {
+							try (PeltasEntryJsonReader reader = new PeltasEntryJsonReader(
+									objectMapper.getFactory().createParser(response.getBody()), objectMapper)) {
+								PeltasEntry entry;
+								while (!cancelled && (entry = reader.next()) != null) {
+									put(entry);
+								}
+							}
+							return null;
+						});
+				put(END);
+			} catch (Throwable e) {
+				put(e);
+			}
+		}
+
+		private void put(Object item) {
+			try {
+				while (!cancelled) {
+					if (buffer.offer(item, 100, TimeUnit.MILLISECONDS)) {
+						return;
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				cancelled = true;
+			}
+		}
+
+		Object take() throws InterruptedException {
+			return buffer.take();
+		}
+
+		void cancel() {
+			cancelled = true;
+			buffer.clear();
+		}
+	}
+}
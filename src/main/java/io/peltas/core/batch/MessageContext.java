@@ -18,9 +18,9 @@ package io.peltas.core.batch;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.messaging.Message;
@@ -65,18 +65,79 @@ public class MessageContext<T> {
 		getStackedItems().addAll(stackedItems);
 	}
 
+	/**
+	 * Keeps the message contexts of the items of a chunk. They are held in the
+	 * {@link ChunkContext} of the chunk and bound to the thread processing it by
+	 * {@link PeltasListener}, so chunks processed in parallel, by a multi-threaded
+	 * step or by several jobs, keep their contexts apart.
+	 */
 	public static class MessageContextHolder {
-		static private Map<Object, MessageContext<?>> messageContextMap = new HashMap<>(1);
+		static final String CHUNK_ATTRIBUTE = "peltas.messagecontexts";
+
+		static private final ThreadLocal<Map<Object, MessageContext<?>>> messageContextMap = new ThreadLocal<>();
+
+		/**
+		 * binds the message contexts of the chunk to the current thread
+		 */
+		@SuppressWarnings("unchecked")
+		static public Map<Object, MessageContext<?>> bind(ChunkContext chunkContext) {
+			Map<Object, MessageContext<?>> messageContexts = (Map<Object, MessageContext<?>>) chunkContext
+					.getAttribute(CHUNK_ATTRIBUTE);
+			if (messageContexts == null) {
+				messageContexts = new ConcurrentHashMap<>();
+				chunkContext.setAttribute(CHUNK_ATTRIBUTE, messageContexts);
+			}
+			messageContextMap.set(messageContexts);
+			return messageContexts;
+		}
+
+		/**
+		 * binds message contexts obtained from {@link #bind(ChunkContext)} to the
+		 * current thread, e.g. a thread processing items of the chunk
+		 */
+		static public void bind(Map<Object, MessageContext<?>> messageContexts) {
+			messageContextMap.set(messageContexts);
+		}
+
+		static public void unbind() {
+			messageContextMap.remove();
+		}
+
+		/**
+		 * drops the message contexts of the chunk
+		 */
+		static public void release(ChunkContext chunkContext) {
+			chunkContext.removeAttribute(CHUNK_ATTRIBUTE);
+			messageContextMap.remove();
+		}
+
+		/**
+		 * @return the message contexts bound to the current thread, null outside
+		 *         of a chunk
+		 */
+		static Map<Object, MessageContext<?>> getBoundMessageContexts() {
+			return messageContextMap.get();
+		}
+
+		/**
+		 * @return the message contexts bound to the current thread, outside of a
+		 *         chunk a new map that is not bound, so pooled threads keep no
+		 *         state once the call returns
+		 */
+		static Map<Object, MessageContext<?>> getMessageContexts() {
+			Map<Object, MessageContext<?>> messageContexts = messageContextMap.get();
+			return messageContexts != null ? messageContexts : new ConcurrentHashMap<>();
+		}
 
 		@SuppressWarnings("unchecked")
 		static public <T> MessageContext<T> getMessageContext(T item) {
-			MessageContext<T> messageContext = (MessageContext<T>) messageContextMap.get(item);
+			MessageContext<T> messageContext = (MessageContext<T>) getMessageContexts().get(item);
 			return messageContext;
 		}
 
 		static void addMessageContext(MessageContext<?> messageContext) {
 			Object item = messageContext.getItem();
-			messageContextMap.put(item, messageContext);
+			getMessageContexts().put(item, messageContext);
 		}
 
 		static MessageContext<?> removeMessageContext(MessageContext<?> messageContext) {
@@ -85,12 +146,12 @@ public class MessageContext<T> {
 		}
 
 		static MessageContext<?> removeMessageItem(Object item) {
-			MessageContext<?> removed = (MessageContext<?>) messageContextMap.remove(item);
+			MessageContext<?> removed = (MessageContext<?>) getMessageContexts().remove(item);
 			return removed;
 		}
 
 		static void clear() {
-			messageContextMap.clear();
+			getMessageContexts().clear();
 		}
 
 		static public List<Object> getStackedItems(Object item) {
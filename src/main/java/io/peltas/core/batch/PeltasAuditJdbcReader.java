@@ -0,0 +1,261 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.batch;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import io.peltas.core.alfresco.PeltasAuditValues;
+import io.peltas.core.alfresco.PeltasEntry;
+import io.peltas.core.repository.PeltasCheckpoint;
+import io.peltas.core.repository.PeltasCheckpointStore;
+
+/**
+ * Reads the audit entries of an audit application straight from the Alfresco
+ * database (ideally through a read-only connection) instead of the audit REST
+ * API. Entries are read in pages of {@link #getPageSize()} ordered by id,
+ * each page starting after the last entry read (keyset pagination), and their
+ * values are rebuilt from the property tables with their actual types
+ * (numbers, booleans, dates, maps and lists) rather than as strings.
+ */
+public class PeltasAuditJdbcReader extends PeltasItemReader<PeltasEntry> {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PeltasAuditJdbcReader.class);
+
+	public static final String ENTRIES_SQL = "select e.id, e.audit_time, e.audit_values_id, app.string_value as app_name, usr.string_value as user_name"
+			+ " from alf_audit_entry e"
+			+ " join alf_audit_app a on a.id = e.audit_app_id"
+			+ " join alf_prop_value app_v on app_v.id = a.app_name_id"
+			+ " join alf_prop_string_value app on app.id = app_v.long_value"
+			+ " left join alf_prop_value usr_v on usr_v.id = e.audit_user_id"
+			+ " left join alf_prop_string_value usr on usr.id = usr_v.long_value"
+			+ " where app.string_value = :application and e.id >= :fromId and e.id < :toId"
+			+ " order by e.id limit :limit";
+
+	public static final String NEWEST_ID_SQL = "select max(e.id) from alf_audit_entry e"
+			+ " join alf_audit_app a on a.id = e.audit_app_id"
+			+ " join alf_prop_value app_v on app_v.id = a.app_name_id"
+			+ " join alf_prop_string_value app on app.id = app_v.long_value"
+			+ " where app.string_value = :application";
+
+	public static final String VALUES_SQL = "select l.root_prop_id, l.prop_index, l.contained_in,"
+			+ " kc.java_class_name as key_class, k.persisted_type as key_type, k.long_value as key_long, ks.string_value as key_string,"
+			+ " vc.java_class_name as value_class, v.persisted_type as value_type, v.long_value as value_long,"
+			+ " vs.string_value as value_string, vd.double_value as value_double, vser.serializable_value as value_serializable"
+			+ " from alf_prop_link l"
+			+ " left join alf_prop_value k on k.id = l.key_prop_id"
+			+ " left join alf_prop_class kc on kc.id = k.actual_type_id"
+			+ " left join alf_prop_string_value ks on k.persisted_type in (3, 6) and ks.id = k.long_value"
+			+ " join alf_prop_value v on v.id = l.value_prop_id"
+			+ " join alf_prop_class vc on vc.id = v.actual_type_id"
+			+ " left join alf_prop_string_value vs on v.persisted_type in (3, 6) and vs.id = v.long_value"
+			+ " left join alf_prop_double_value vd on v.persisted_type = 2 and vd.id = v.long_value"
+			+ " left join alf_prop_serializable_value vser on v.persisted_type = 4 and vser.id = v.long_value"
+			+ " where l.root_prop_id in (:roots)"
+			+ " order by l.root_prop_id, l.prop_index";
+
+	private final NamedParameterJdbcTemplate jdbcTemplate;
+	private final String auditApplication;
+	private final PeltasCheckpointStore checkpointStore;
+
+	private int pageSize = 1000;
+	private int lastPageSize = 0;
+
+	private long fromId = 0;
+	private long toId = Long.MAX_VALUE;
+
+	public PeltasAuditJdbcReader(String applicationName, String auditApplication, DataSource dataSource,
+			PeltasCheckpointStore checkpointStore) {
+		super(applicationName);
+		this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+		this.auditApplication = auditApplication;
+		this.checkpointStore = checkpointStore;
+	}
+
+	@Override
+	protected void onOpen() {
+		setList(readPage(getFromId()));
+	}
+
+	@Override
+	protected List<PeltasEntry> readNextPage(PeltasEntry lastEntry) throws Exception {
+		if (lastPageSize < pageSize) {
+			return null;
+		}
+		return readPage(Long.parseLong(lastEntry.getId()) + 1);
+	}
+
+	@Override
+	protected boolean isPaged() {
+		return true;
+	}
+
+	/**
+	 * @return the id following the one of the last processed entry, as stored by
+	 *         {@link PeltasProcessor}, and at least the configured from id
+	 */
+	protected long getFromId() {
+		if (checkpointStore == null) {
+			return fromId;
+		}
+
+		PeltasCheckpoint checkpoint = checkpointStore.find(getApplicationName());
+		if (checkpoint == null) {
+			return fromId;
+		}
+		return Math.max(fromId, checkpoint.getLastId() + 1);
+	}
+
+	/**
+	 * @return the ids between the checkpoint and the newest entry of the audit
+	 *         application, an upper bound of the entries waiting to be read as
+	 *         the ids are shared by all the audit applications
+	 */
+	public long getBacklogEstimate() {
+		Long newestId = jdbcTemplate.queryForObject(getNewestIdSql(),
+				new MapSqlParameterSource("application", auditApplication), Long.class);
+		if (newestId == null) {
+			return 0;
+		}
+		return Math.max(0, Math.min(newestId + 1, toId) - getFromId());
+	}
+
+	public PeltasCheckpointStore getCheckpointStore() {
+		return checkpointStore;
+	}
+
+	protected List<PeltasEntry> readPage(long fromId) {
+		LOGGER.trace("readPage() reading {} entries of {} from id {}", pageSize, auditApplication, fromId);
+
+		MapSqlParameterSource parameters = new MapSqlParameterSource().addValue("application", auditApplication)
+				.addValue("fromId", fromId).addValue("toId", toId).addValue("limit", pageSize);
+
+		List<PeltasEntry> entries = new ArrayList<>();
+		Map<Long, PeltasEntry> entriesByRoot = new LinkedHashMap<>();
+		jdbcTemplate.query(getEntriesSql(), parameters, (ResultSet rs) -> {
+			PeltasEntry entry = new PeltasEntry();
+			entry.setId(Long.toString(rs.getLong("id")));
+			entry.setApplication(rs.getString("app_name"));
+			entry.setUser(rs.getString("user_name"));
+			entry.setTime(new Timestamp(rs.getLong("audit_time")));
+			entry.setValues(new HashMap<>());
+			entries.add(entry);
+
+			long root = rs.getLong("audit_values_id");
+			if (!rs.wasNull()) {
+				entriesByRoot.put(root, entry);
+			}
+		});
+
+		lastPageSize = entries.size();
+		if (!entriesByRoot.isEmpty()) {
+			readValues(entriesByRoot);
+		}
+		return entries;
+	}
+
+	private void readValues(Map<Long, PeltasEntry> entriesByRoot) {
+		Map<Long, PeltasAuditValues> values = new HashMap<>();
+		jdbcTemplate.query(getValuesSql(), new MapSqlParameterSource("roots", entriesByRoot.keySet()),
+				(ResultSet rs) -> {
+					long root = rs.getLong("root_prop_id");
+					values.computeIfAbsent(root, r -> new PeltasAuditValues()).add(rs.getLong("prop_index"),
+							rs.getLong("contained_in"), decodeKey(rs), decodeValue(rs));
+				});
+
+		values.forEach((root, auditValues) -> entriesByRoot.get(root).setValues(auditValues.getValues()));
+	}
+
+	private static Object decodeKey(ResultSet rs) throws SQLException {
+		int type = rs.getInt("key_type");
+		if (rs.wasNull()) {
+			return null;
+		}
+		return PeltasAuditValues.decode(rs.getString("key_class"), type, getLong(rs, "key_long"),
+				rs.getString("key_string"), null, null);
+	}
+
+	private static Object decodeValue(ResultSet rs) throws SQLException {
+		return PeltasAuditValues.decode(rs.getString("value_class"), rs.getInt("value_type"),
+				getLong(rs, "value_long"), rs.getString("value_string"), getDouble(rs, "value_double"),
+				rs.getBytes("value_serializable"));
+	}
+
+	private static Long getLong(ResultSet rs, String column) throws SQLException {
+		long value = rs.getLong(column);
+		return rs.wasNull() ? null : value;
+	}
+
+	private static Double getDouble(ResultSet rs, String column) throws SQLException {
+		double value = rs.getDouble(column);
+		return rs.wasNull() ? null : value;
+	}
+
+	/**
+	 * the entries page query, using <code>limit</code> as supported by
+	 * PostgreSQL and MySQL
+	 */
+	protected String getEntriesSql() {
+		return ENTRIES_SQL;
+	}
+
+	protected String getValuesSql() {
+		return VALUES_SQL;
+	}
+
+	protected String getNewestIdSql() {
+		return NEWEST_ID_SQL;
+	}
+
+	public void setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * the first id read (inclusive) when no entry was processed yet
+	 */
+	public void setFromId(long fromId) {
+		this.fromId = fromId;
+	}
+
+	/**
+	 * the id where the reading stops (exclusive)
+	 */
+	public void setToId(long toId) {
+		this.toId = toId;
+	}
+
+	public String getAuditApplication() {
+		return auditApplication;
+	}
+}
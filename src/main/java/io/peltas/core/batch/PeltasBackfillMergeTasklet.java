@@ -0,0 +1,90 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.batch;
+
+import java.util.Date;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+
+import io.peltas.core.alfresco.PeltasException;
+import io.peltas.core.repository.PeltasCheckpoint;
+import io.peltas.core.repository.PeltasCheckpointStore;
+
+/**
+ * Hands a completed backfill over to the live job: the checkpoints of the
+ * partitions are merged into the live checkpoint, which is moved to the end
+ * of the backfilled range unless it is already past it, and the partition
+ * checkpoints are removed. Fails when the live checkpoint is below the start of
+ * the range, moving it would skip the entries in between.
+ */
+public class PeltasBackfillMergeTasklet implements Tasklet {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PeltasBackfillMergeTasklet.class);
+
+	private final PeltasCheckpointStore checkpointStore;
+	private final String applicationName;
+	private final List<String> partitionNames;
+	private final long fromId;
+	private final long toId;
+
+	public PeltasBackfillMergeTasklet(PeltasCheckpointStore checkpointStore, String applicationName,
+			List<String> partitionNames, long fromId, long toId) {
+		this.checkpointStore = checkpointStore;
+		this.applicationName = applicationName;
+		this.partitionNames = partitionNames;
+		this.fromId = fromId;
+		this.toId = toId;
+	}
+
+	@Override
+	public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+		PeltasCheckpoint live = checkpointStore.find(applicationName);
+		if (live != null && live.getLastId() < fromId - 1) {
+			throw new PeltasException("the live checkpoint " + live + " of " + applicationName
+					+ " is below the backfilled range starting at " + fromId + ", backfill the entries in between first");
+		}
+
+		long processed = 0;
+		for (String partitionName : partitionNames) {
+			PeltasCheckpoint partition = checkpointStore.find(partitionName);
+			if (partition != null) {
+				processed += partition.getProcessed();
+			}
+		}
+
+		long lastId = toId - 1;
+		if (live == null) {
+			live = new PeltasCheckpoint(applicationName, lastId, processed, new Date());
+		} else {
+			live = new PeltasCheckpoint(applicationName, Math.max(live.getLastId(), lastId),
+					live.getProcessed() + processed, new Date());
+		}
+		checkpointStore.save(live);
+		LOGGER.info("execute() backfill of {} merged, {} entries processed, live checkpoint {}", applicationName,
+				processed, live);
+
+		for (String partitionName : partitionNames) {
+			checkpointStore.delete(partitionName);
+		}
+		return RepeatStatus.FINISHED;
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.step.item.Chunk;
+import org.springframework.batch.core.step.item.SimpleChunkProcessor;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
+
+/**
+ * Processes a whole chunk with {@link PeltasItemProcessor#processChunk(List)}
+ * instead of item by item, or its items concurrently with
+ * {@link PeltasItemProcessor#processConcurrently(List, Executor)} when given a
+ * task executor, optionally in key ordered lanes. The item process listeners
+ * are still called for every item, in the order of the chunk and on the thread
+ * of the chunk, and the processed items are written in that order.
+ */
+public class PeltasChunkProcessor<I, O> extends SimpleChunkProcessor<I, O> {
+
+	private final ItemProcessor<? super I, ? extends O> itemProcessor;
+
+	private Executor taskExecutor;
+
+	private int lanes;
+
+	private Function<? super I, ?> laneKey;
+
+	public PeltasChunkProcessor(ItemProcessor<? super I, ? extends O> itemProcessor,
+			ItemWriter<? super O> itemWriter) {
+		super(itemProcessor, itemWriter);
+		this.itemProcessor = itemProcessor;
+	}
+
+	/**
+	 * processes the items of a chunk concurrently on <code>taskExecutor</code>,
+	 * null (default) processes the chunk at once
+	 */
+	public void setTaskExecutor(Executor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+	/**
+	 * with a task executor, processes the items of a chunk in <code>lanes</code>
+	 * lanes keyed by <code>laneKey</code>, see
+	 * {@link PeltasItemProcessor#processInLanes(List, Executor, int, Function)}.
+	 * 0 (default) processes each item on its own.
+	 */
+	public void setLanes(int lanes, Function<? super I, ?> laneKey) {
+		this.lanes = lanes;
+		this.laneKey = laneKey;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	protected Chunk<O> transform(StepContribution contribution, Chunk<I> inputs) throws Exception {
+		if (!(itemProcessor instanceof PeltasItemProcessor)) {
+			return super.transform(contribution, inputs);
+		}
+
+		List<I> items = new ArrayList<>(inputs.getItems());
+		for (I item : items) {
+			getListener().beforeProcess(item);
+		}
+
+		List<? extends O> outputs;
+		Exception[] errors = new Exception[items.size()];
+		try {
+			PeltasItemProcessor<I, O> peltasItemProcessor = (PeltasItemProcessor<I, O>) itemProcessor;
+			if (taskExecutor != null) {
+				outputs = peltasItemProcessor.processInLanes(items, taskExecutor, lanes > 0 ? lanes : Math.max(1, items.size()),
+						lanes > 0 ? laneKey : null, errors);
+			} else {
+				outputs = peltasItemProcessor.processChunk(items);
+			}
+		} catch (Exception e) {
+			boolean reported = false;
+			for (int i = 0; i < errors.length; i++) {
+				if (errors[i] != null) {
+					getListener().onProcessError(items.get(i), errors[i]);
+					reported = true;
+				}
+			}
+			if (!reported) {
+				// the chunk failed as a whole, none of its items was processed
+				for (I item : items) {
+					getListener().onProcessError(item, e);
+				}
+			}
+			inputs.clear();
+			throw e;
+		}
+
+		Chunk<O> processed = new Chunk<>();
+		int i = 0;
+		for (Chunk<I>.ChunkIterator iterator = inputs.iterator(); iterator.hasNext(); i++) {
+			I item = iterator.next();
+			O output = outputs.get(i);
+			getListener().afterProcess(item, output);
+			if (output != null) {
+				processed.add(output);
+			} else {
+				iterator.remove();
+			}
+		}
+		return processed;
+	}
+}
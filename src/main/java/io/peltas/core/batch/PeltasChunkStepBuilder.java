@@ -0,0 +1,78 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.batch;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
+import org.springframework.batch.core.step.item.ChunkOrientedTasklet;
+import org.springframework.batch.core.step.item.SimpleChunkProvider;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.util.Assert;
+
+/**
+ * Builds a chunk step whose chunks are processed at once, or item by item
+ * concurrently, by a {@link PeltasChunkProcessor}.
+ */
+public class PeltasChunkStepBuilder<I, O> extends SimpleStepBuilder<I, O> {
+
+	private Executor processorTaskExecutor;
+
+	private int processorLanes;
+
+	private Function<? super I, ?> processorLaneKey;
+
+	public PeltasChunkStepBuilder(SimpleStepBuilder<I, O> parent) {
+		super(parent);
+	}
+
+	/**
+	 * processes the items of each chunk concurrently on <code>taskExecutor</code>
+	 */
+	public PeltasChunkStepBuilder<I, O> processorTaskExecutor(Executor taskExecutor) {
+		this.processorTaskExecutor = taskExecutor;
+		return this;
+	}
+
+	/**
+	 * processes the items of each chunk concurrently in <code>lanes</code> lanes
+	 * keeping the order of the items with the same <code>laneKey</code>
+	 */
+	public PeltasChunkStepBuilder<I, O> processorLanes(int lanes, Function<? super I, ?> laneKey) {
+		this.processorLanes = lanes;
+		this.processorLaneKey = laneKey;
+		return this;
+	}
+
+	@Override
+	protected Tasklet createTasklet() {
+		Assert.state(getReader() != null, "ItemReader must be provided");
+		Assert.state(getWriter() != null, "ItemWriter must be provided");
+
+		SimpleChunkProvider<I> chunkProvider = new SimpleChunkProvider<>(getReader(), createChunkOperations());
+		PeltasChunkProcessor<I, O> chunkProcessor = new PeltasChunkProcessor<>(getProcessor(), getWriter());
+		chunkProcessor.setTaskExecutor(processorTaskExecutor);
+		chunkProcessor.setLanes(processorLanes, processorLaneKey);
+		chunkProvider.setListeners(new ArrayList<>(getItemListeners()));
+		chunkProcessor.setListeners(new ArrayList<>(getItemListeners()));
+
+		ChunkOrientedTasklet<I> tasklet = new ChunkOrientedTasklet<>(chunkProvider, chunkProcessor);
+		tasklet.setBuffering(!isReaderTransactionalQueue());
+		return tasklet;
+	}
+}
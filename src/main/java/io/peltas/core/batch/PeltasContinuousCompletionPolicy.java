@@ -0,0 +1,88 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.batch;
+
+import org.springframework.batch.repeat.RepeatContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.repeat.context.RepeatContextSupport;
+import org.springframework.batch.repeat.policy.CompletionPolicySupport;
+
+/**
+ * Completes the chunks of a {@link PeltasContinuousItemReader} when they reach
+ * <code>chunkSize</code> entries, when <code>commitInterval</code>
+ * milliseconds passed since their first entry or when the reader has no entry
+ * ready, so entries are not held back while waiting for new ones. A chunk
+ * starting without any entry ready is completed before reading, empty.
+ */
+public class PeltasContinuousCompletionPolicy extends CompletionPolicySupport {
+
+	private final PeltasContinuousItemReader<?> reader;
+	private final int chunkSize;
+	private final long commitInterval;
+
+	public PeltasContinuousCompletionPolicy(PeltasContinuousItemReader<?> reader, int chunkSize,
+			long commitInterval) {
+		this.reader = reader;
+		this.chunkSize = chunkSize;
+		this.commitInterval = commitInterval;
+	}
+
+	@Override
+	public RepeatContext start(RepeatContext parent) {
+		ChunkRepeatContext context = new ChunkRepeatContext(parent);
+		if (!reader.poll()) {
+			// nothing to read, the chunk ends empty without waiting in its transaction
+			context.setCompleteOnly();
+		}
+		return context;
+	}
+
+	@Override
+	public void update(RepeatContext context) {
+		((ChunkRepeatContext) context).count++;
+	}
+
+	@Override
+	public boolean isComplete(RepeatContext context, RepeatStatus result) {
+		if (result != null && !result.isContinuable()) {
+			return true;
+		}
+
+		ChunkRepeatContext chunk = (ChunkRepeatContext) context;
+		long now = System.currentTimeMillis();
+		if (chunk.firstRead == 0) {
+			chunk.firstRead = now;
+		}
+		if (chunk.count >= chunkSize || now - chunk.firstRead >= commitInterval) {
+			return true;
+		}
+		return !reader.hasReadyItem();
+	}
+
+	@Override
+	public boolean isComplete(RepeatContext context) {
+		return ((ChunkRepeatContext) context).count >= chunkSize;
+	}
+
+	private static class ChunkRepeatContext extends RepeatContextSupport {
+		private int count;
+		private long firstRead;
+
+		ChunkRepeatContext(RepeatContext parent) {
+			super(parent);
+		}
+	}
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamReader;
+
+/**
+ * Reads the entries of a delegate reader without ever reaching the end: once
+ * the delegate is exhausted it is reopened, so it queries the entries after the
+ * last checkpoint again, every <code>pollInterval</code> milliseconds until new
+ * entries come. The step ends only when {@link #stop() stopped}, interrupted or
+ * terminated.
+ * <p>
+ * The delegate is polled by {@link PeltasContinuousCompletionPolicy} at the
+ * start of every chunk, after the previous one (and its checkpoint) was
+ * committed. Without entries the chunk ends empty and the reader waits in
+ * {@link #afterChunk(ChunkContext)}, outside of the chunk transaction, so an
+ * idle step holds no connection and writes its progress (and sees a stop
+ * requested through the job repository) after every poll.
+ * {@link #hasReadyItem()} tells whether the delegate has an entry ready, the
+ * policy uses it to commit a chunk as soon as the reader caught up.
+ */
+public class PeltasContinuousItemReader<T> implements ItemStreamReader<T>, StepExecutionListener, ChunkListener {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PeltasContinuousItemReader.class);
+
+	private final ItemReader<T> delegate;
+	private final long pollInterval;
+
+	private T next;
+	private Exception failure;
+	private boolean idle;
+	private volatile boolean stopped;
+	private StepExecution stepExecution;
+
+	public PeltasContinuousItemReader(ItemReader<T> delegate, long pollInterval) {
+		this.delegate = delegate;
+		this.pollInterval = pollInterval;
+	}
+
+	@Override
+	public T read() throws Exception {
+		if (failure != null) {
+			Exception e = failure;
+			failure = null;
+			throw e;
+		}
+		if (next != null) {
+			T item = next;
+			next = null;
+			return item;
+		}
+
+		// null once stopping, the chunks start only with an entry ready otherwise
+		return delegate.read();
+	}
+
+	/**
+	 * polls the delegate for new entries at the start of a chunk, reopening it
+	 * once exhausted
+	 * 
+	 * @return false if the chunk should end without entries, the reader then
+	 *         waits <code>pollInterval</code> milliseconds after it
+	 */
+	public boolean poll() {
+		if (hasReadyItem()) {
+			return true;
+		}
+		if (isStopping()) {
+			// the next read ends the step
+			LOGGER.info("poll() stopping");
+			return true;
+		}
+
+		reopen();
+		if (hasReadyItem()) {
+			return true;
+		}
+		idle = true;
+		return false;
+	}
+
+	/**
+	 * @return whether an entry (or a read error) can be read without waiting for
+	 *         new entries
+	 */
+	public boolean hasReadyItem() {
+		if (next == null && failure == null) {
+			try {
+				next = delegate.read();
+			} catch (Exception e) {
+				// thrown by the next read
+				failure = e;
+			}
+		}
+		return next != null || failure != null;
+	}
+
+	private void reopen() {
+		if (delegate instanceof ItemStream) {
+			ItemStream stream = (ItemStream) delegate;
+			stream.close();
+			stream.open(new ExecutionContext());
+		}
+	}
+
+	private boolean isStopping() {
+		return stopped || Thread.currentThread().isInterrupted()
+				|| (stepExecution != null && stepExecution.isTerminateOnly());
+	}
+
+	/**
+	 * ends the step once the entries read are processed
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	@Override
+	public void open(ExecutionContext executionContext) {
+		stopped = false;
+		next = null;
+		failure = null;
+		if (delegate instanceof ItemStream) {
+			((ItemStream) delegate).open(executionContext);
+		}
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) {
+		if (delegate instanceof ItemStream) {
+			((ItemStream) delegate).update(executionContext);
+		}
+	}
+
+	@Override
+	public void close() {
+		next = null;
+		failure = null;
+		if (delegate instanceof ItemStream) {
+			((ItemStream) delegate).close();
+		}
+	}
+
+	@Override
+	public void beforeChunk(ChunkContext context) {
+		idle = false;
+	}
+
+	@Override
+	public void afterChunk(ChunkContext context) {
+		if (!idle) {
+			return;
+		}
+		idle = false;
+		if (!isStopping()) {
+			try {
+				Thread.sleep(pollInterval);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Override
+	public void afterChunkError(ChunkContext context) {
+		idle = false;
+	}
+
+	@Override
+	public void beforeStep(StepExecution stepExecution) {
+		this.stepExecution = stepExecution;
+	}
+
+	@Override
+	public ExitStatus afterStep(StepExecution stepExecution) {
+		this.stepExecution = null;
+		return null;
+	}
+}
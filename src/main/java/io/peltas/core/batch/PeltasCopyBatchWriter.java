@@ -0,0 +1,102 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.peltas.core.batch;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import io.peltas.core.alfresco.config.PeltasHandlerConfigurationProperties;
+import io.peltas.core.alfresco.config.PipelineExecution;
+
+/**
+ * A batched {@link PeltasJdbcBatchWriter} streaming the rows of the executions
+ * configured with <code>insertonly=true</code> through the PostgreSQL
+ * <code>CopyManager</code>. Insert-only executions return no keys, the other
+ * executions are sent as jdbc batches.
+ */
+public class PeltasCopyBatchWriter extends PeltasJdbcBatchWriter {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PeltasCopyBatchWriter.class);
+
+	public static final String INSERT_ONLY_CONFIG = "insertonly";
+
+	private static final int FLUSH_SIZE = 64 * 1024;
+
+	private final Map<String, PeltasCopyStatement> copyStatements = new ConcurrentHashMap<>();
+
+	public PeltasCopyBatchWriter(NamedParameterJdbcTemplate template, PeltasHandlerConfigurationProperties properties) {
+		super(template, properties);
+		setBatched(true);
+	}
+
+	@Override
+	protected void executeBatch(String executionKey, List<MapSqlParameterSource> sources) {
+		PipelineExecution execution = getProperties().getPipelineExecution(executionKey);
+		if (!Boolean.parseBoolean(execution.getConfigValue(INSERT_ONLY_CONFIG))) {
+			super.executeBatch(executionKey, sources);
+			return;
+		}
+
+		PeltasCopyStatement statement = copyStatements.computeIfAbsent(execution.getConfigValue("sql"),
+				PeltasCopyStatement::parse);
+		Long rows = getNamedParameterJdbcTemplate().getJdbcOperations().execute(new ConnectionCallback<Long>() {
+			@Override
+			public Long doInConnection(Connection con) throws SQLException {
+				return copy(con, statement, sources);
+			}
+		});
+		LOGGER.debug("executeBatch() copied {} rows of {}", rows, executionKey);
+	}
+
+	private static long copy(Connection con, PeltasCopyStatement statement, List<MapSqlParameterSource> sources)
+			throws SQLException {
+		CopyIn copyIn = con.unwrap(PGConnection.class).getCopyAPI().copyIn(statement.getCopySql());
+		try {
+			StringBuilder rows = new StringBuilder();
+			for (MapSqlParameterSource source : sources) {
+				statement.appendRow(rows, source);
+				if (rows.length() >= FLUSH_SIZE) {
+					flush(copyIn, rows);
+				}
+			}
+			flush(copyIn, rows);
+			return copyIn.endCopy();
+		} finally {
+			if (copyIn.isActive()) {
+				copyIn.cancelCopy();
+			}
+		}
+	}
+
+	private static void flush(CopyIn copyIn, StringBuilder rows) throws SQLException {
+		byte[] bytes = rows.toString().getBytes(StandardCharsets.UTF_8);
+		copyIn.writeToCopy(bytes, 0, bytes.length);
+		rows.setLength(0);
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.peltas.core.batch;
+
+import java.sql.Timestamp;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.util.StringUtils;
+
+import io.peltas.core.alfresco.PeltasException;
+
+/**
+ * An <code>insert into table (columns) values(:parameters)</code> execution
+ * turned into a PostgreSQL <code>COPY table (columns) FROM STDIN</code>, whose
+ * rows are written in the COPY text format from the named parameter values.
+ * Only plain named parameter values are supported.
+ */
+public final class PeltasCopyStatement {
+
+	private static final Pattern INSERT_PATTERN = Pattern
+			.compile("^\\s*insert\\s+into\\s+([^\\s(]+)\\s*\\(([^)]*)\\)\\s*values\\s*\\((.*)\\)\\s*;?\\s*$",
+					Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+	private static final Pattern PARAMETER_PATTERN = Pattern.compile("^:([^\\s,():]+)$");
+	// the wall-clock time and offset of the JVM zone, as the jdbc driver sends
+	// timestamps, whatever the zone of the database session
+	private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter
+			.ofPattern("uuuu-MM-dd HH:mm:ss.SSSSSSxxx").withZone(ZoneId.systemDefault());
+
+	private final String copySql;
+	private final String[] parameters;
+
+	private PeltasCopyStatement(String copySql, String[] parameters) {
+		this.copySql = copySql;
+		this.parameters = parameters;
+	}
+
+	public static PeltasCopyStatement parse(String sql) {
+		Matcher matcher = INSERT_PATTERN.matcher(sql);
+		if (!matcher.matches()) {
+			throw new PeltasException("only 'insert into table (columns) values(...)' can be copied: " + sql);
+		}
+
+		String[] columns = StringUtils.trimArrayElements(StringUtils.commaDelimitedListToStringArray(matcher.group(2)));
+		String[] values = StringUtils.trimArrayElements(StringUtils.commaDelimitedListToStringArray(matcher.group(3)));
+		if (columns.length != values.length) {
+			throw new PeltasException("the number of columns and values differ: " + sql);
+		}
+
+		List<String> parameters = new ArrayList<>(values.length);
+		for (String value : values) {
+			Matcher parameterMatcher = PARAMETER_PATTERN.matcher(value);
+			if (!parameterMatcher.matches()) {
+				throw new PeltasException("only named parameter values can be copied, found " + value + " in: " + sql);
+			}
+			parameters.add(parameterMatcher.group(1));
+		}
+
+		String copySql = "COPY " + matcher.group(1) + " (" + StringUtils.arrayToDelimitedString(columns, ", ")
+				+ ") FROM STDIN";
+		return new PeltasCopyStatement(copySql, parameters.toArray(new String[parameters.size()]));
+	}
+
+	public String getCopySql() {
+		return copySql;
+	}
+
+	/**
+	 * appends one tab separated, newline terminated row of the text format
+	 */
+	public void appendRow(StringBuilder row, SqlParameterSource source) {
+		for (int i = 0; i < parameters.length; i++) {
+			if (i > 0) {
+				row.append('\t');
+			}
+			if (!source.hasValue(parameters[i])) {
+				throw new IllegalArgumentException("No value supplied for the SQL parameter '" + parameters[i] + "'");
+			}
+			appendValue(row, source.getValue(parameters[i]));
+		}
+		row.append('\n');
+	}
+
+	private static void appendValue(StringBuilder row, Object value) {
+		if (value instanceof SqlParameterValue) {
+			value = ((SqlParameterValue) value).getValue();
+		}
+
+		if (value == null) {
+			row.append("\\N");
+		} else if (value instanceof Boolean) {
+			row.append((Boolean) value ? 't' : 'f');
+		} else if (value instanceof Timestamp) {
+			TIMESTAMP_FORMATTER.formatTo(((Timestamp) value).toInstant(), row);
+		} else if (value instanceof Date && !(value instanceof java.sql.Date || value instanceof java.sql.Time)) {
+			TIMESTAMP_FORMATTER.formatTo(((Date) value).toInstant(), row);
+		} else if (value instanceof byte[]) {
+			row.append("\\\\x");
+			for (byte b : (byte[]) value) {
+				row.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+		} else {
+			appendEscaped(row, value.toString());
+		}
+	}
+
+	private static void appendEscaped(StringBuilder row, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '\\':
+				row.append("\\\\");
+				break;
+			case '\n':
+				row.append("\\n");
+				break;
+			case '\r':
+				row.append("\\r");
+				break;
+			case '\t':
+				row.append("\\t");
+				break;
+			default:
+				row.append(c);
+			}
+		}
+	}
+}
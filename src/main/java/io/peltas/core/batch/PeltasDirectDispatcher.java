@@ -0,0 +1,158 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.batch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.core.DestinationResolutionException;
+import org.springframework.messaging.core.DestinationResolver;
+import org.springframework.messaging.core.GenericMessagingTemplate;
+import org.springframework.messaging.support.GenericMessage;
+
+/**
+ * Dispatches an item in process: the {@link ItemRouter} resolves the channel
+ * and the handler registered for it is called directly, without channels,
+ * reply channels nor interceptors. Channels without a registered handler are
+ * sent the message through the messaging template, so custom flows keep
+ * working.
+ * <p>
+ * A chunk is split by channel and each part is handled in one call, by the
+ * chunk handler registered for the channel or by the one listening on
+ * <code>&lt;channel&gt;.chunk</code> (a list of messages in, the list of their
+ * replies out), falling back to the items one by one.
+ */
+public class PeltasDirectDispatcher<I> {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PeltasDirectDispatcher.class);
+
+	public static final String CHUNK_CHANNEL_SUFFIX = ".chunk";
+
+	private final ItemRouter<I> router;
+	private final Map<String, Function<Message<I>, ?>> handlers = new HashMap<>();
+	private final Map<String, Function<List<Message<I>>, List<?>>> chunkHandlers = new HashMap<>();
+	private final Map<String, Boolean> chunkChannels = new ConcurrentHashMap<>();
+
+	public PeltasDirectDispatcher(ItemRouter<I> router) {
+		this.router = router;
+	}
+
+	/**
+	 * registers the handler of the messages routed to <code>channel</code>,
+	 * usually the method of its <code>@ServiceActivator</code>
+	 */
+	public PeltasDirectDispatcher<I> handler(String channel, Function<Message<I>, ?> handler) {
+		handlers.put(channel, handler);
+		return this;
+	}
+
+	/**
+	 * registers the handler of the chunk parts routed to <code>channel</code>,
+	 * returning the replies in the order of the messages
+	 */
+	public PeltasDirectDispatcher<I> chunkHandler(String channel, Function<List<Message<I>>, List<?>> handler) {
+		chunkHandlers.put(channel, handler);
+		return this;
+	}
+
+	/**
+	 * @return the reply payload of the handler of the routed channel
+	 */
+	public Object dispatch(Message<I> message, GenericMessagingTemplate template) {
+		String channel = router.handleMessage(message);
+
+		Function<Message<I>, ?> handler = handlers.get(channel);
+		if (handler != null) {
+			return handler.apply(message);
+		}
+
+		LOGGER.trace("dispatch() no direct handler for {}, sending the message", channel);
+		Message<?> reply = template.sendAndReceive(channel, message);
+		return reply != null ? reply.getPayload() : null;
+	}
+
+	/**
+	 * @return the reply payloads of the messages, in their order
+	 */
+	public List<Object> dispatchChunk(List<Message<I>> messages, GenericMessagingTemplate template) {
+		Map<String, List<Integer>> channels = new LinkedHashMap<>();
+		for (int i = 0; i < messages.size(); i++) {
+			channels.computeIfAbsent(router.handleMessage(messages.get(i)), c -> new ArrayList<>()).add(i);
+		}
+
+		Object[] replies = new Object[messages.size()];
+		for (Map.Entry<String, List<Integer>> channel : channels.entrySet()) {
+			List<Integer> indexes = channel.getValue();
+			List<Message<I>> part = new ArrayList<>(indexes.size());
+			for (Integer index : indexes) {
+				part.add(messages.get(index));
+			}
+
+			List<?> partReplies = dispatchPart(channel.getKey(), part, template);
+			for (int i = 0; i < indexes.size(); i++) {
+				replies[indexes.get(i)] = partReplies.get(i);
+			}
+		}
+		return Arrays.asList(replies);
+	}
+
+	private List<?> dispatchPart(String channel, List<Message<I>> part, GenericMessagingTemplate template) {
+		Function<List<Message<I>>, List<?>> chunkHandler = chunkHandlers.get(channel);
+		if (chunkHandler != null) {
+			return chunkHandler.apply(part);
+		}
+
+		Function<Message<I>, ?> handler = handlers.get(channel);
+		if (handler == null && hasChunkChannel(channel, template)) {
+			Message<?> reply = template.sendAndReceive(channel + CHUNK_CHANNEL_SUFFIX, new GenericMessage<>(part));
+			return (List<?>) reply.getPayload();
+		}
+
+		List<Object> replies = new ArrayList<>(part.size());
+		for (Message<I> message : part) {
+			if (handler != null) {
+				replies.add(handler.apply(message));
+			} else {
+				Message<?> reply = template.sendAndReceive(channel, message);
+				replies.add(reply != null ? reply.getPayload() : null);
+			}
+		}
+		return replies;
+	}
+
+	private boolean hasChunkChannel(String channel, GenericMessagingTemplate template) {
+		return chunkChannels.computeIfAbsent(channel, c -> {
+			DestinationResolver<?> resolver = template.getDestinationResolver();
+			if (resolver == null) {
+				return false;
+			}
+			try {
+				return resolver.resolveDestination(c + CHUNK_CHANNEL_SUFFIX) != null;
+			} catch (DestinationResolutionException e) {
+				return false;
+			}
+		});
+	}
+}
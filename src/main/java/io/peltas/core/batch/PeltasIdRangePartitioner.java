@@ -0,0 +1,59 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.batch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+
+/**
+ * Splits the audit ids from <code>fromId</code> (inclusive) to
+ * <code>toId</code> (exclusive) into contiguous ranges of about the same size.
+ */
+public class PeltasIdRangePartitioner implements Partitioner {
+
+	public static final String FROM_ID = "fromId";
+	public static final String TO_ID = "toId";
+
+	private final long fromId;
+	private final long toId;
+
+	public PeltasIdRangePartitioner(long fromId, long toId) {
+		this.fromId = fromId;
+		this.toId = toId;
+	}
+
+	@Override
+	public Map<String, ExecutionContext> partition(int gridSize) {
+		Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+		long size = Math.max(toId - fromId, 0);
+		int count = (int) Math.max(Math.min(gridSize, size), 1);
+
+		long from = fromId;
+		for (int i = 0; i < count; i++) {
+			long to = i == count - 1 ? toId : from + size / count + (i < size % count ? 1 : 0);
+
+			ExecutionContext context = new ExecutionContext();
+			context.putLong(FROM_ID, from);
+			context.putLong(TO_ID, to);
+			partitions.put("partition" + i, context);
+			from = to;
+		}
+		return partitions;
+	}
+}
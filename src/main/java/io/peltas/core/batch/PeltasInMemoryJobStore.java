@@ -0,0 +1,407 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.batch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.springframework.batch.core.DefaultJobKeyGenerator;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.JobKeyGenerator;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.launch.NoSuchJobException;
+import org.springframework.batch.core.repository.dao.ExecutionContextDao;
+import org.springframework.batch.core.repository.dao.JobExecutionDao;
+import org.springframework.batch.core.repository.dao.JobInstanceDao;
+import org.springframework.batch.core.repository.dao.StepExecutionDao;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+import org.springframework.util.PatternMatchUtils;
+
+/**
+ * In memory job repository storage keeping only the last
+ * <code>maxExecutions</code> executions of every job and/or the executions
+ * created in the last <code>maxAge</code> milliseconds (0 disables a limit).
+ * Older executions are purged together with their step executions, execution
+ * contexts and job instance whenever a new execution of the same job is
+ * saved. Unfinished executions are never purged.
+ * <p>
+ * Job and step executions are kept by reference, so updating them after every
+ * chunk only bumps their version. Execution contexts are stored as shallow
+ * copies, published when the surrounding transaction commits.
+ */
+public class PeltasInMemoryJobStore
+		implements JobInstanceDao, JobExecutionDao, StepExecutionDao, ExecutionContextDao {
+
+	private final int maxExecutions;
+	private final long maxAge;
+
+	private final JobKeyGenerator<JobParameters> jobKeyGenerator = new DefaultJobKeyGenerator();
+
+	private final AtomicLong instanceIds = new AtomicLong();
+	private final AtomicLong executionIds = new AtomicLong();
+	private final AtomicLong stepExecutionIds = new AtomicLong();
+
+	private final Map<Long, JobInstance> instances = new ConcurrentHashMap<>();
+	private final Map<String, JobInstance> instancesByKey = new ConcurrentHashMap<>();
+	private final Map<Long, String> instanceKeys = new ConcurrentHashMap<>();
+
+	// execution ids of every job, oldest first
+	private final Map<String, Deque<Long>> histories = new ConcurrentHashMap<>();
+	private final Map<Long, JobExecution> executions = new ConcurrentHashMap<>();
+	private final Map<Long, Map<Long, StepExecution>> stepExecutions = new ConcurrentHashMap<>();
+
+	private final Map<Long, ExecutionContext> jobContexts = new ConcurrentHashMap<>();
+	private final Map<Long, ExecutionContext> stepContexts = new ConcurrentHashMap<>();
+
+	public PeltasInMemoryJobStore(int maxExecutions, long maxAge) {
+		this.maxExecutions = maxExecutions;
+		this.maxAge = maxAge;
+	}
+
+	@Override
+	public JobInstance createJobInstance(String jobName, JobParameters jobParameters) {
+		String key = instanceKey(jobName, jobParameters);
+		JobInstance instance = new JobInstance(instanceIds.incrementAndGet(), jobName);
+		instance.incrementVersion();
+
+		Assert.state(instancesByKey.putIfAbsent(key, instance) == null, "JobInstance must not already exist");
+		instanceKeys.put(instance.getId(), key);
+		instances.put(instance.getId(), instance);
+		return instance;
+	}
+
+	@Override
+	public JobInstance getJobInstance(String jobName, JobParameters jobParameters) {
+		return instancesByKey.get(instanceKey(jobName, jobParameters));
+	}
+
+	@Override
+	public JobInstance getJobInstance(Long instanceId) {
+		return instances.get(instanceId);
+	}
+
+	@Override
+	public JobInstance getJobInstance(JobExecution jobExecution) {
+		JobExecution stored = executions.get(jobExecution.getId());
+		return stored != null ? stored.getJobInstance() : null;
+	}
+
+	@Override
+	public List<JobInstance> getJobInstances(String jobName, int start, int count) {
+		return page(jobName::equals, start, count);
+	}
+
+	@Override
+	public List<JobInstance> findJobInstancesByName(String jobName, int start, int count) {
+		return page(name -> PatternMatchUtils.simpleMatch(jobName, name), start, count);
+	}
+
+	@Override
+	public List<String> getJobNames() {
+		return instances.values().stream().map(JobInstance::getJobName).distinct().sorted()
+				.collect(Collectors.toList());
+	}
+
+	@Override
+	public int getJobInstanceCount(String jobName) throws NoSuchJobException {
+		int count = (int) instances.values().stream().filter(i -> i.getJobName().equals(jobName)).count();
+		if (count == 0) {
+			throw new NoSuchJobException("No job instances for job name " + jobName + " were found");
+		}
+		return count;
+	}
+
+	private List<JobInstance> page(Predicate<String> jobName, int start, int count) {
+		return instances.values().stream().filter(i -> jobName.test(i.getJobName()))
+				.sorted(Comparator.comparing(JobInstance::getId).reversed()).skip(start).limit(count)
+				.collect(Collectors.toList());
+	}
+
+	private String instanceKey(String jobName, JobParameters jobParameters) {
+		return jobName + "|" + jobKeyGenerator.generateKey(jobParameters);
+	}
+
+	@Override
+	public void saveJobExecution(JobExecution jobExecution) {
+		Assert.isTrue(jobExecution.getId() == null, "JobExecution is already saved");
+		jobExecution.setId(executionIds.incrementAndGet());
+		jobExecution.incrementVersion();
+		executions.put(jobExecution.getId(), jobExecution);
+
+		String jobName = jobExecution.getJobInstance().getJobName();
+		Deque<Long> history = histories.computeIfAbsent(jobName, k -> new ConcurrentLinkedDeque<>());
+		history.addLast(jobExecution.getId());
+		purge(history);
+	}
+
+	@Override
+	public void updateJobExecution(JobExecution jobExecution) {
+		Long id = jobExecution.getId();
+		Assert.notNull(id, "JobExecution is expected to have an id (should be saved already)");
+		JobExecution stored = executions.get(id);
+		Assert.notNull(stored, "JobExecution must already be saved");
+
+		if (stored != jobExecution) {
+			checkVersion(stored.getVersion(), jobExecution.getVersion(), jobExecution);
+			executions.replace(id, jobExecution);
+		}
+		jobExecution.incrementVersion();
+	}
+
+	@Override
+	public List<JobExecution> findJobExecutions(JobInstance jobInstance) {
+		List<JobExecution> found = executionsOf(jobInstance);
+		found.sort(Comparator.comparing(JobExecution::getId).reversed());
+		return found;
+	}
+
+	@Override
+	public JobExecution getLastJobExecution(JobInstance jobInstance) {
+		return executionsOf(jobInstance).stream().max(Comparator.comparing(JobExecution::getId)).orElse(null);
+	}
+
+	@Override
+	public Set<JobExecution> findRunningJobExecutions(String jobName) {
+		Set<JobExecution> running = new LinkedHashSet<>();
+		Deque<Long> history = histories.get(jobName);
+		if (history != null) {
+			for (Long id : history) {
+				JobExecution execution = executions.get(id);
+				if (execution != null && execution.isRunning()) {
+					running.add(execution);
+				}
+			}
+		}
+		return running;
+	}
+
+	@Override
+	public JobExecution getJobExecution(Long executionId) {
+		return executions.get(executionId);
+	}
+
+	@Override
+	public void synchronizeStatus(JobExecution jobExecution) {
+		JobExecution stored = executions.get(jobExecution.getId());
+		if (stored != null && stored != jobExecution
+				&& stored.getVersion().intValue() != jobExecution.getVersion().intValue()) {
+			jobExecution.upgradeStatus(stored.getStatus());
+			jobExecution.setVersion(stored.getVersion());
+		}
+	}
+
+	private List<JobExecution> executionsOf(JobInstance jobInstance) {
+		List<JobExecution> found = new ArrayList<>();
+		Deque<Long> history = histories.get(jobInstance.getJobName());
+		if (history != null) {
+			for (Long id : history) {
+				JobExecution execution = executions.get(id);
+				if (execution != null && execution.getJobInstance().getId().equals(jobInstance.getId())) {
+					found.add(execution);
+				}
+			}
+		}
+		return found;
+	}
+
+	@Override
+	public void saveStepExecution(StepExecution stepExecution) {
+		Assert.isTrue(stepExecution.getId() == null, "StepExecution is already saved");
+		stepExecution.setId(stepExecutionIds.incrementAndGet());
+		stepExecution.incrementVersion();
+		stepExecutions.computeIfAbsent(stepExecution.getJobExecutionId(), k -> new ConcurrentSkipListMap<>())
+				.put(stepExecution.getId(), stepExecution);
+	}
+
+	@Override
+	public void saveStepExecutions(Collection<StepExecution> stepExecutions) {
+		Assert.notNull(stepExecutions, "Attempt to save a null collection of step executions");
+		for (StepExecution stepExecution : stepExecutions) {
+			saveStepExecution(stepExecution);
+		}
+	}
+
+	@Override
+	public void updateStepExecution(StepExecution stepExecution) {
+		Long id = stepExecution.getId();
+		Assert.notNull(id, "StepExecution is expected to have an id (should be saved already)");
+		Map<Long, StepExecution> steps = stepExecutions.get(stepExecution.getJobExecutionId());
+		StepExecution stored = steps != null ? steps.get(id) : null;
+		Assert.notNull(stored, "StepExecution must already be saved");
+
+		if (stored != stepExecution) {
+			checkVersion(stored.getVersion(), stepExecution.getVersion(), stepExecution);
+			steps.replace(id, stepExecution);
+		}
+		stepExecution.incrementVersion();
+	}
+
+	@Override
+	public StepExecution getStepExecution(JobExecution jobExecution, Long stepExecutionId) {
+		Map<Long, StepExecution> steps = stepExecutions.get(jobExecution.getId());
+		return steps != null ? steps.get(stepExecutionId) : null;
+	}
+
+	@Override
+	public void addStepExecutions(JobExecution jobExecution) {
+		Map<Long, StepExecution> steps = stepExecutions.get(jobExecution.getId());
+		if (steps != null && !steps.isEmpty()) {
+			jobExecution.addStepExecutions(new ArrayList<>(steps.values()));
+		}
+	}
+
+	private void checkVersion(Integer stored, Integer version, Object execution) {
+		if (stored.intValue() != version.intValue()) {
+			throw new OptimisticLockingFailureException("Attempt to update execution id=" + execution
+					+ " with wrong version (" + version + "), where current version is " + stored);
+		}
+	}
+
+	@Override
+	public ExecutionContext getExecutionContext(JobExecution jobExecution) {
+		return copy(jobContexts.get(jobExecution.getId()));
+	}
+
+	@Override
+	public ExecutionContext getExecutionContext(StepExecution stepExecution) {
+		return copy(stepContexts.get(stepExecution.getId()));
+	}
+
+	@Override
+	public void saveExecutionContext(JobExecution jobExecution) {
+		updateExecutionContext(jobExecution);
+	}
+
+	@Override
+	public void saveExecutionContext(StepExecution stepExecution) {
+		updateExecutionContext(stepExecution);
+	}
+
+	@Override
+	public void saveExecutionContexts(Collection<StepExecution> stepExecutions) {
+		Assert.notNull(stepExecutions, "Attempt to save a null collection of step executions");
+		for (StepExecution stepExecution : stepExecutions) {
+			saveExecutionContext(stepExecution);
+		}
+	}
+
+	@Override
+	public void updateExecutionContext(JobExecution jobExecution) {
+		publish(jobContexts, jobExecution.getId(), jobExecution.getExecutionContext());
+	}
+
+	@Override
+	public void updateExecutionContext(StepExecution stepExecution) {
+		publish(stepContexts, stepExecution.getId(), stepExecution.getExecutionContext());
+	}
+
+	private void publish(Map<Long, ExecutionContext> contexts, Long id, ExecutionContext executionContext) {
+		ExecutionContext snapshot = copy(executionContext);
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			contexts.put(id, snapshot);
+			return;
+		}
+
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) {
+				if (status == STATUS_COMMITTED) {
+					contexts.put(id, snapshot);
+				}
+			}
+		});
+	}
+
+	private ExecutionContext copy(ExecutionContext executionContext) {
+		return executionContext != null ? new ExecutionContext(executionContext) : null;
+	}
+
+	private void purge(Deque<Long> history) {
+		long now = System.currentTimeMillis();
+		int excess = maxExecutions > 0 ? history.size() - maxExecutions : 0;
+		Set<JobInstance> purgedInstances = new TreeSet<>(Comparator.comparing(JobInstance::getId));
+
+		Iterator<Long> iterator = history.iterator();
+		while (iterator.hasNext()) {
+			Long id = iterator.next();
+			JobExecution execution = executions.get(id);
+			if (execution == null) {
+				iterator.remove();
+				continue;
+			}
+
+			boolean expired = maxAge > 0 && now - execution.getCreateTime().getTime() > maxAge;
+			if (excess <= 0 && !expired) {
+				// the history is in creation order, everything after is newer
+				break;
+			}
+			if (execution.getEndTime() == null) {
+				continue;
+			}
+
+			iterator.remove();
+			remove(execution);
+			purgedInstances.add(execution.getJobInstance());
+			excess--;
+		}
+
+		for (JobInstance instance : purgedInstances) {
+			if (executionsOf(instance).isEmpty()) {
+				instances.remove(instance.getId());
+				String key = instanceKeys.remove(instance.getId());
+				if (key != null) {
+					instancesByKey.remove(key);
+				}
+			}
+		}
+	}
+
+	private void remove(JobExecution execution) {
+		executions.remove(execution.getId());
+		jobContexts.remove(execution.getId());
+
+		Map<Long, StepExecution> steps = stepExecutions.remove(execution.getId());
+		if (steps != null) {
+			for (Long stepExecutionId : steps.keySet()) {
+				stepContexts.remove(stepExecutionId);
+			}
+		}
+	}
+
+	public int size() {
+		return executions.size();
+	}
+}
@@ -17,18 +17,31 @@
 package io.peltas.core.batch;
 
 import java.util.ArrayList;
-import java.util.UUID;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
+import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.core.GenericMessagingTemplate;
+import org.springframework.messaging.support.GenericMessage;
 import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.Assert;
 
 import io.peltas.core.batch.MessageContext.MessageContextHolder;
 
 public abstract class PeltasItemProcessor<I, O> extends PeltasListener<I, O> implements ItemProcessor<I, O> {
 	private final GenericMessagingTemplate template;
 
+	private final AtomicLong stackIds = new AtomicLong();
+
+	private PeltasDirectDispatcher<I> directDispatcher;
+
 	public PeltasItemProcessor(GenericMessagingTemplate template) {
 		this.template = template;
 	}
@@ -40,35 +53,208 @@ public abstract class PeltasItemProcessor<I, O> extends PeltasListener<I, O> imp
 			return null;
 		}
 
-		String auditStackId = UUID.randomUUID().toString();
+		Message<I> message = createMessage(item);
+		MessageContext<Object> messageContext = createMessageContext(message);
+
+		O payload;
+		if (directDispatcher != null) {
+			payload = (O) directDispatcher.dispatch(message, template);
+		} else {
+			Message<O> ret = (Message<O>) template.sendAndReceive("peltas.entry", message);
+			payload = ret.getPayload();
+		}
+
+		return onReply(item, payload, messageContext);
+	}
+
+	/**
+	 * processes the items of a chunk at once: they are sent as a single message to
+	 * the <code>peltas.chunk</code> channel (or dispatched directly), routed and
+	 * handled by handler
+	 * 
+	 * @return the processed items in the order of <code>items</code>, null for
+	 *         the filtered ones
+	 */
+	@SuppressWarnings("unchecked")
+	public List<O> processChunk(List<? extends I> items) throws Exception {
+		List<Message<I>> messages = new ArrayList<>(items.size());
+		List<MessageContext<Object>> messageContexts = new ArrayList<>(items.size());
+		for (I item : items) {
+			if (!shouldSkipItem(item)) {
+				Message<I> message = createMessage(item);
+				messages.add(message);
+				messageContexts.add(createMessageContext(message));
+			}
+		}
+
+		List<?> replies;
+		if (messages.isEmpty()) {
+			replies = messages;
+		} else if (directDispatcher != null) {
+			replies = directDispatcher.dispatchChunk(messages, template);
+		} else {
+			replies = (List<?>) template.sendAndReceive("peltas.chunk", new GenericMessage<>(messages)).getPayload();
+		}
+
+		List<O> payloads = new ArrayList<>(items.size());
+		int m = 0;
+		for (I item : items) {
+			if (m < messages.size() && messages.get(m).getPayload() == item) {
+				payloads.add(onReply(item, (O) replies.get(m), messageContexts.get(m)));
+				m++;
+			} else {
+				payloads.add(null);
+			}
+		}
+		return payloads;
+	}
+
+	/**
+	 * processes the items of a chunk concurrently on <code>taskExecutor</code>,
+	 * each one as by {@link #process(Object)}
+	 * 
+	 * @return the processed items in the order of <code>items</code>, null for
+	 *         the filtered ones
+	 * @throws Exception the error of the first failed item in the order of
+	 *                   <code>items</code>
+	 */
+	public List<O> processConcurrently(List<? extends I> items, Executor taskExecutor) throws Exception {
+		return processInLanes(items, taskExecutor, items.size(), null);
+	}
+
+	/**
+	 * processes the items of a chunk concurrently on <code>taskExecutor</code>
+	 * in <code>lanes</code> lanes: the items are hashed on their
+	 * <code>laneKey</code> and each lane processes its items one after the other
+	 * in the order of <code>items</code>, so items with the same key are never
+	 * processed out of order. Items without a key all go to the first lane, in
+	 * order. Without a <code>laneKey</code> the items are spread over the lanes.
+	 * 
+	 * @return the processed items in the order of <code>items</code>, null for
+	 *         the filtered ones
+	 * @throws Exception the error of the first failed item in the order of
+	 *                   <code>items</code>, the items after it in its lane are not
+	 *                   processed
+	 */
+	public List<O> processInLanes(List<? extends I> items, Executor taskExecutor, int lanes,
+			Function<? super I, ?> laneKey) throws Exception {
+		return processInLanes(items, taskExecutor, lanes, laneKey, new Exception[items.size()]);
+	}
+
+	/**
+	 * @param errors filled with the error of every failed item, at its index in
+	 *               <code>items</code>
+	 */
+	@SuppressWarnings("unchecked")
+	List<O> processInLanes(List<? extends I> items, Executor taskExecutor, int lanes, Function<? super I, ?> laneKey,
+			Exception[] errors) throws Exception {
+		Assert.isTrue(lanes > 0, "lanes must be positive");
+
+		List<List<Integer>> laneItems = new ArrayList<>(lanes);
+		for (int l = 0; l < lanes; l++) {
+			laneItems.add(new ArrayList<>());
+		}
+		for (int i = 0; i < items.size(); i++) {
+			int lane;
+			if (laneKey == null) {
+				lane = i % lanes;
+			} else {
+				Object key = laneKey.apply(items.get(i));
+				lane = key != null ? Math.floorMod(key.hashCode(), lanes) : 0;
+			}
+			laneItems.get(lane).add(i);
+		}
+
+		ChunkContext chunkContext = getCurrentChunkContext();
+		Map<Object, MessageContext<?>> bound = MessageContextHolder.getBoundMessageContexts();
+		// outside of a chunk the lanes share a map for the duration of the call
+		Map<Object, MessageContext<?>> messageContexts = bound != null ? bound : new ConcurrentHashMap<>();
+
+		Object[] payloads = new Object[items.size()];
+		List<CompletableFuture<Void>> futures = new ArrayList<>(lanes);
+		for (List<Integer> lane : laneItems) {
+			if (lane.isEmpty()) {
+				continue;
+			}
+			futures.add(CompletableFuture.runAsync(() -> {
+				// the executor may run the lane on the calling thread
+				boolean bind = MessageContextHolder.getBoundMessageContexts() != messageContexts;
+				if (bind) {
+					bindChunk(chunkContext, messageContexts);
+				}
+				try {
+					for (int i : lane) {
+						try {
+							payloads[i] = process(items.get(i));
+						} catch (Exception e) {
+							errors[i] = e;
+							return;
+						}
+					}
+				} finally {
+					if (bind) {
+						unbindChunk();
+					}
+				}
+			}, taskExecutor));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).join();
+
+		for (Exception error : errors) {
+			if (error != null) {
+				throw error;
+			}
+		}
+		List<O> processed = new ArrayList<>(items.size());
+		for (Object payload : payloads) {
+			processed.add((O) payload);
+		}
+		return processed;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Message<I> createMessage(I item) {
+		String auditStackId = Long.toString(stackIds.incrementAndGet());
 		MessageBuilder<I> messageBuilder = MessageBuilder.withPayload(item)
 				.setHeader("peltas.stack", new ArrayList<O>()).setHeader("peltas.stack.id", auditStackId);
 		doWithMessage(messageBuilder);
-		Message<I> message = messageBuilder.build();
+		return messageBuilder.build();
+	}
 
-		@SuppressWarnings("unused")
-		Class<I> clazzI = (Class<I>) item.getClass();
-		MessageContext<Object> messageContext = new MessageContext<>(this.currentChunkContext);
-		messageContext.setItem(auditStackId);
+	@SuppressWarnings("unchecked")
+	private MessageContext<Object> createMessageContext(Message<I> message) {
+		MessageContext<Object> messageContext = new MessageContext<>(getCurrentChunkContext());
+		messageContext.setItem(message.getHeaders().get("peltas.stack.id"));
 		messageContext.setMessage((Message<Object>) message);
 		MessageContextHolder.addMessageContext(messageContext);
+		return messageContext;
+	}
 
-		Message<O> ret = (Message<O>) template.sendAndReceive("peltas.entry", message);
-		@SuppressWarnings("unused")
-		Class<O> clazzO = (Class<O>) ret.getPayload().getClass();
-
+	private O onReply(I item, O payload, MessageContext<Object> messageContext) {
 		MessageContextHolder.removeMessageContext(messageContext);
-		O payload = ret.getPayload();
-		if (shouldSkipPayload(payload)) {
+		if (payload == null || shouldSkipPayload(payload)) {
 			return null;
 		}
 
-		messageContext.setItem(ret.getPayload());
+		messageContext.setItem(payload);
 		MessageContextHolder.addMessageContext(messageContext);
 		onItemProcessed(item, payload);
 		return payload;
 	}
 
+	/**
+	 * dispatches the items directly to their handlers instead of sending them to
+	 * the <code>peltas.entry</code> channel, <code>null</code> (default) keeps the
+	 * messaging
+	 */
+	public void setDirectDispatcher(PeltasDirectDispatcher<I> directDispatcher) {
+		this.directDispatcher = directDispatcher;
+	}
+
+	public PeltasDirectDispatcher<I> getDirectDispatcher() {
+		return directDispatcher;
+	}
+
 	protected void onItemProcessed(I item, O payload) {
 	}
 
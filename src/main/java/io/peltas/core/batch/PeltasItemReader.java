@@ -16,14 +16,22 @@
 
 package io.peltas.core.batch;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
 
+/**
+ * Reads the items of the current page through an index cursor. When the page
+ * is exhausted the next one is requested from {@link #readNextPage(Object)}
+ * with the last item read, so only a single page is held in memory.
+ */
 public class PeltasItemReader<T> extends AbstractItemCountingItemStreamItemReader<T> {
 
-	private final List<T> list = new ArrayList<>();
+	private List<T> page = Collections.emptyList();
+	private int cursor = 0;
+	private T lastEntry;
+
 	private final String applicationName;
 
 	protected int lastCount = 0;
@@ -45,23 +53,54 @@ public class PeltasItemReader<T> extends AbstractItemCountingItemStreamItemReade
 
 	@Override
 	protected T doRead() throws Exception {
-		if (!list.isEmpty()) {
-			T entry = list.remove(0);
-			onRead(entry);
-			return entry;
+		if (cursor >= page.size() && !nextPage()) {
+			return null;
 		}
 
-		return null;
+		T entry = page.get(cursor++);
+		lastEntry = entry;
+		onRead(entry);
+		return entry;
 	}
 
-	protected void setList(List<T> list) {
-		this.list.clear();
-		if (list != null) {
-			this.list.addAll(list);
+	private boolean nextPage() throws Exception {
+		if (lastEntry == null) {
+			return false;
+		}
+
+		List<T> next = readNextPage(lastEntry);
+		// release the exhausted page before the next one is processed
+		page = Collections.emptyList();
+		cursor = 0;
+		if (next == null || next.isEmpty()) {
+			lastEntry = null;
+			return false;
 		}
-		lastCount = this.list.size();
+
+		page = next;
+		lastCount += next.size();
+		return true;
+	}
+
+	protected void setList(List<T> list) {
+		this.page = list != null ? list : Collections.<T>emptyList();
+		this.cursor = 0;
+		this.lastEntry = null;
+		lastCount = this.page.size();
 		setCurrentItemCount(0);
-		setMaxItemCount(lastCount > 0 ? lastCount : 1);
+		setMaxItemCount(isPaged() ? Integer.MAX_VALUE : (lastCount > 0 ? lastCount : 1));
+	}
+
+	/**
+	 * @return the page following <code>lastEntry</code>, <code>null</code> or an
+	 *         empty list when there are no more entries
+	 */
+	protected List<T> readNextPage(T lastEntry) throws Exception {
+		return null;
+	}
+
+	protected boolean isPaged() {
+		return false;
 	}
 
 	protected void onRead(T entry) {
@@ -72,6 +111,7 @@ public class PeltasItemReader<T> extends AbstractItemCountingItemStreamItemReade
 
 	@Override
 	protected void doClose() throws Exception {
+		setList(null);
 	}
 
 	public String getApplicationName() {
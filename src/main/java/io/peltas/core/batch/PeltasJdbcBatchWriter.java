@@ -16,23 +16,41 @@
 
 package io.peltas.core.batch;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.item.ItemWriter;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
 import org.springframework.integration.transformer.ObjectToMapTransformer;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.SqlParameter;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.support.GenericMessage;
+import org.springframework.util.StringUtils;
 
 import com.google.common.collect.ImmutableMap;
 
@@ -40,22 +58,83 @@ import io.peltas.core.alfresco.PeltasEntry;
 import io.peltas.core.alfresco.config.PeltasHandlerConfigurationProperties;
 import io.peltas.core.alfresco.config.PipelineCollection;
 import io.peltas.core.alfresco.config.PipelineExecution;
+import io.peltas.core.alfresco.config.PipelineExecutionGraph;
 
+/**
+ * Runs the pipeline executions of the written items. By default every
+ * execution is a <code>queryForMap</code> per item and per collection element.
+ * In batched mode the statements of a chunk are grouped by execution and sent
+ * with <code>addBatch/executeBatch</code>: the executions of all items at the
+ * same {@link PipelineExecutionGraph} level form one stage, so the generated
+ * keys of a stage (read back in statement order, all columns or the ones
+ * listed in the <code>keycolumns</code> execution config) are available to the
+ * next ones as <code>:executionKey.column</code>. Batched executions must
+ * therefore be DML statements returning their results as generated keys. With
+ * a rows per statement limit, single row inserts are coalesced into multi-row
+ * <code>insert ... values (...), (...) returning</code> statements instead,
+ * relying on the database to return the rows in the order of the values rows.
+ */
 public class PeltasJdbcBatchWriter implements ItemWriter<PeltasDataHolder> {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(PeltasJdbcBatchWriter.class);
 
+	public static final String KEY_COLUMNS_CONFIG = "keycolumns";
+
 	private final PeltasHandlerConfigurationProperties properties;
 	private final NamedParameterJdbcOperations namedParameterJdbcTemplate;
 
+	private final Map<String, ParsedSql> parsedSqlCache = new ConcurrentHashMap<>();
+
+	private final Map<String, Optional<PeltasMultiRowInsert>> multiRowInserts = new ConcurrentHashMap<>();
+
+	private boolean batched;
+
+	private int rowsPerStatement;
+
 	public PeltasJdbcBatchWriter(NamedParameterJdbcTemplate template, PeltasHandlerConfigurationProperties properties) {
 		this.properties = properties;
 		this.namedParameterJdbcTemplate = template;
 	}
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * @param batched whether the statements of a chunk are sent as jdbc batches,
+	 *                one per execution and stage. The statements are then no
+	 *                longer run item after item: all the statements of an
+	 *                execution (grouped by statement text) run before the ones
+	 *                of the next execution of the same stage. Every statement
+	 *                must generate exactly one key row, or the chunk fails
+	 */
+	public void setBatched(boolean batched) {
+		this.batched = batched;
+	}
+
+	public boolean isBatched() {
+		return batched;
+	}
+
+	/**
+	 * @param rowsPerStatement in batched mode, the maximum number of rows a
+	 *                         single row insert execution is coalesced into, 0 to
+	 *                         disable the coalescing
+	 */
+	public void setRowsPerStatement(int rowsPerStatement) {
+		this.rowsPerStatement = rowsPerStatement;
+	}
+
+	public int getRowsPerStatement() {
+		return rowsPerStatement;
+	}
+
 	public void write(List<? extends PeltasDataHolder> items) throws Exception {
+		if (batched) {
+			writeBatched(items);
+		} else {
+			writeItems(items);
+		}
+	}
 
+	@SuppressWarnings("unchecked")
+	private void writeItems(List<? extends PeltasDataHolder> items) {
 		for (PeltasDataHolder item : items) {
 			MapSqlParameterSource parameterSourceMap = createSqlParameterSource(item);
 
@@ -94,16 +173,7 @@ public class PeltasJdbcBatchWriter implements ItemWriter<PeltasDataHolder> {
 								parameterSourceMap.getValues());
 
 						for (Object collectionValue : collectionValueList) {
-							if (collectionValue instanceof Map) {
-								Message<Map<String, ?>> message = new GenericMessage<Map<String, ?>>(
-										ImmutableMap.of(collectionKey, collectionValue));
-								ObjectToMapTransformer transformer = new ObjectToMapTransformer();
-								transformer.setShouldFlattenKeys(true);
-								Map<String, ?> payload = (Map<String, ?>) transformer.transform(message).getPayload();
-								collectionSqlMapsource.addValues(payload);
-							} else {
-								collectionSqlMapsource.addValue(collectionKey, collectionValue);
-							}
+							addCollectionValue(collectionKey, collectionValue, collectionSqlMapsource);
 
 							for (String execution : executions) {
 								PipelineExecution executionCollection = properties.getPipelineExecution(execution);
@@ -123,6 +193,243 @@ public class PeltasJdbcBatchWriter implements ItemWriter<PeltasDataHolder> {
 		}
 	}
 
+	@SuppressWarnings("unchecked")
+	private void writeBatched(List<? extends PeltasDataHolder> items) {
+		List<MapSqlParameterSource> itemSources = new ArrayList<>(items.size());
+		List<List<List<String>>> itemLevels = new ArrayList<>(items.size());
+		for (PeltasDataHolder item : items) {
+			itemSources.add(createSqlParameterSource(item));
+			itemLevels.add(properties.getExecutionGraph(item.getConfig().getPipeline()).getLevels());
+		}
+		executeStages(itemSources, itemLevels);
+
+		List<MapSqlParameterSource> elementSources = new ArrayList<>();
+		List<List<List<String>>> elementLevels = new ArrayList<>();
+		for (int i = 0; i < items.size(); i++) {
+			PeltasDataHolder item = items.get(i);
+			Map<String, PipelineCollection> collections = item.getConfig().getPipeline().getCollections();
+			if (collections == null) {
+				continue;
+			}
+
+			PipelineExecutionGraph graph = properties.getExecutionGraph(item.getConfig().getPipeline());
+			for (String collectionKey : collections.keySet()) {
+				Collection<Object> collectionValueList = (Collection<Object>) item.getBuilder().get(collectionKey);
+				if (collectionValueList == null || collectionValueList.isEmpty()) {
+					continue;
+				}
+
+				// as with one shared source per collection, an element sees the values of the
+				// previous elements it does not override
+				MapSqlParameterSource previous = itemSources.get(i);
+				for (Object collectionValue : collectionValueList) {
+					MapSqlParameterSource elementSource = new MapSqlParameterSource(previous.getValues());
+					addCollectionValue(collectionKey, collectionValue, elementSource);
+					elementSources.add(elementSource);
+					elementLevels.add(graph.getCollectionLevels(collectionKey));
+					previous = elementSource;
+				}
+			}
+		}
+		executeStages(elementSources, elementLevels);
+	}
+
+	/**
+	 * one batch stage per execution graph level: the executions of a level
+	 * only depend on the results of the previous levels
+	 */
+	private void executeStages(List<MapSqlParameterSource> sources, List<List<List<String>>> levels) {
+		int stages = 0;
+		for (List<List<String>> sourceLevels : levels) {
+			stages = Math.max(stages, sourceLevels.size());
+		}
+
+		for (int stage = 0; stage < stages; stage++) {
+			BatchStage batchStage = new BatchStage();
+			for (int i = 0; i < sources.size(); i++) {
+				List<List<String>> sourceLevels = levels.get(i);
+				if (stage < sourceLevels.size()) {
+					for (String execution : sourceLevels.get(stage)) {
+						batchStage.add(execution, sources.get(i));
+					}
+				}
+			}
+			batchStage.execute();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void addCollectionValue(String collectionKey, Object collectionValue,
+			MapSqlParameterSource collectionSqlMapsource) {
+		if (collectionValue instanceof Map) {
+			Message<Map<String, ?>> message = new GenericMessage<Map<String, ?>>(
+					ImmutableMap.of(collectionKey, collectionValue));
+			ObjectToMapTransformer transformer = new ObjectToMapTransformer();
+			transformer.setShouldFlattenKeys(true);
+			Map<String, ?> payload = (Map<String, ?>) transformer.transform(message).getPayload();
+			collectionSqlMapsource.addValues(payload);
+		} else {
+			collectionSqlMapsource.addValue(collectionKey, collectionValue);
+		}
+	}
+
+	/**
+	 * the statements of one stage grouped by execution key
+	 */
+	private class BatchStage {
+
+		private final Map<String, List<MapSqlParameterSource>> statements = new LinkedHashMap<>();
+
+		void add(String executionKey, MapSqlParameterSource source) {
+			statements.computeIfAbsent(executionKey, k -> new ArrayList<>()).add(source);
+		}
+
+		void execute() {
+			for (Entry<String, List<MapSqlParameterSource>> entry : statements.entrySet()) {
+				executeBatch(entry.getKey(), entry.getValue());
+				LOGGER.debug("writeBatched() executed {} statements of {}", entry.getValue().size(), entry.getKey());
+			}
+		}
+	}
+
+	/**
+	 * executes the statements of an execution as jdbc batches, one per sql its
+	 * named parameters expand to, and adds the generated keys to the sources
+	 */
+	protected void executeBatch(String executionKey, List<MapSqlParameterSource> sources) {
+		if (rowsPerStatement > 1 && sources.size() > 1) {
+			PeltasMultiRowInsert multiRowInsert = multiRowInsert(executionKey);
+			if (multiRowInsert != null) {
+				executeMultiRow(executionKey, multiRowInsert, sources);
+				return;
+			}
+		}
+
+		ParsedSql parsedSql = parsedSql(executionKey);
+		Map<String, List<MapSqlParameterSource>> statements = new LinkedHashMap<>();
+		for (MapSqlParameterSource source : sources) {
+			statements.computeIfAbsent(NamedParameterUtils.substituteNamedParameters(parsedSql, source),
+					k -> new ArrayList<>()).add(source);
+		}
+
+		String keyColumns = properties.getPipelineExecution(executionKey).getConfigValue(KEY_COLUMNS_CONFIG);
+		for (Entry<String, List<MapSqlParameterSource>> entry : statements.entrySet()) {
+			List<MapSqlParameterSource> statementSources = entry.getValue();
+			List<Map<String, Object>> keys = executeBatch(parsedSql, entry.getKey(), keyColumns, statementSources);
+
+			if (keys.size() != statementSources.size()) {
+				throw new IncorrectResultSizeDataAccessException(
+						"batch of " + executionKey + " generated " + keys.size() + " keys", statementSources.size(),
+						keys.size());
+			}
+			for (int i = 0; i < statementSources.size(); i++) {
+				addSources(executionKey, statementSources.get(i), keys.get(i));
+			}
+		}
+	}
+
+	private PeltasMultiRowInsert multiRowInsert(String executionKey) {
+		return multiRowInserts.computeIfAbsent(executionKey, k -> {
+			PipelineExecution execution = properties.getPipelineExecution(k);
+			return Optional.ofNullable(PeltasMultiRowInsert.parse(execution.getConfigValue("sql"),
+					execution.getConfigValue(KEY_COLUMNS_CONFIG)));
+		}).orElse(null);
+	}
+
+	/**
+	 * inserts the rows of an execution with multi-row inserts of at most
+	 * rowsPerStatement rows, the returned rows are mapped back to the sources in
+	 * order and must be as many as the inserted rows
+	 */
+	private void executeMultiRow(String executionKey, PeltasMultiRowInsert multiRowInsert,
+			List<MapSqlParameterSource> sources) {
+		ParsedSql row = multiRowInsert.getRow();
+		Map<String, List<MapSqlParameterSource>> statements = new LinkedHashMap<>();
+		for (MapSqlParameterSource source : sources) {
+			statements.computeIfAbsent(NamedParameterUtils.substituteNamedParameters(row, source),
+					k -> new ArrayList<>()).add(source);
+		}
+
+		for (Entry<String, List<MapSqlParameterSource>> entry : statements.entrySet()) {
+			List<MapSqlParameterSource> statementSources = entry.getValue();
+			List<SqlParameter> rowParameters = NamedParameterUtils.buildSqlParameterList(row, statementSources.get(0));
+
+			for (int from = 0; from < statementSources.size(); from += rowsPerStatement) {
+				List<MapSqlParameterSource> rows = statementSources.subList(from,
+						Math.min(from + rowsPerStatement, statementSources.size()));
+
+				List<SqlParameter> parameters = new ArrayList<>(rowParameters.size() * rows.size());
+				List<Object> values = new ArrayList<>(rowParameters.size() * rows.size());
+				for (MapSqlParameterSource source : rows) {
+					parameters.addAll(rowParameters);
+					values.addAll(Arrays.asList(NamedParameterUtils.buildValueArray(row, source, null)));
+				}
+
+				String sql = multiRowInsert.getSql(entry.getKey(), rows.size());
+				List<Map<String, Object>> keys = namedParameterJdbcTemplate.getJdbcOperations().query(sql,
+						new PreparedStatementCreatorFactory(sql, parameters).newPreparedStatementSetter(values),
+						new ColumnMapRowMapper());
+
+				if (keys.size() != rows.size()) {
+					throw new IncorrectResultSizeDataAccessException(
+							"multi-row insert of " + executionKey + " returned " + keys.size() + " rows", rows.size(),
+							keys.size());
+				}
+				for (int i = 0; i < rows.size(); i++) {
+					addSources(executionKey, rows.get(i), keys.get(i));
+				}
+			}
+		}
+	}
+
+	protected PeltasHandlerConfigurationProperties getProperties() {
+		return properties;
+	}
+
+	protected NamedParameterJdbcOperations getNamedParameterJdbcTemplate() {
+		return namedParameterJdbcTemplate;
+	}
+
+	private ParsedSql parsedSql(String executionKey) {
+		String sql = properties.getPipelineExecution(executionKey).getConfigValue("sql");
+		return parsedSqlCache.computeIfAbsent(sql, NamedParameterUtils::parseSqlStatement);
+	}
+
+	private List<Map<String, Object>> executeBatch(ParsedSql parsedSql, String sql, String keyColumns,
+			List<MapSqlParameterSource> sources) {
+		PreparedStatementCreatorFactory factory = new PreparedStatementCreatorFactory(sql,
+				NamedParameterUtils.buildSqlParameterList(parsedSql, sources.get(0)));
+
+		return namedParameterJdbcTemplate.getJdbcOperations()
+				.execute(new ConnectionCallback<List<Map<String, Object>>>() {
+					@Override
+					public List<Map<String, Object>> doInConnection(Connection con) throws SQLException {
+						try (PreparedStatement ps = StringUtils.hasText(keyColumns)
+								? con.prepareStatement(sql, StringUtils
+										.trimArrayElements(StringUtils.commaDelimitedListToStringArray(keyColumns)))
+								: con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+							for (MapSqlParameterSource source : sources) {
+								PreparedStatementSetter setter = factory.newPreparedStatementSetter(
+										NamedParameterUtils.buildValueArray(parsedSql, source, null));
+								setter.setValues(ps);
+								ps.addBatch();
+							}
+							ps.executeBatch();
+
+							List<Map<String, Object>> keys = new ArrayList<>(sources.size());
+							try (ResultSet rs = ps.getGeneratedKeys()) {
+								ColumnMapRowMapper rowMapper = new ColumnMapRowMapper();
+								int rowNum = 0;
+								while (rs != null && rs.next()) {
+									keys.add(rowMapper.mapRow(rs, rowNum++));
+								}
+							}
+							return keys;
+						}
+					}
+				});
+	}
+
 	private void addSources(String executionKey, MapSqlParameterSource parameterSourceMap, Map<String, Object> key) {
 		Set<Entry<String, Object>> entrySet = key.entrySet();
 
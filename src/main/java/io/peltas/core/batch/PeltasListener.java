@@ -17,6 +17,7 @@
 package io.peltas.core.batch;
 
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.batch.core.ExitStatus;
 import org.springframework.batch.core.StepExecution;
@@ -35,21 +36,44 @@ import org.springframework.batch.core.scope.context.ChunkContext;
 import io.peltas.core.batch.MessageContext.MessageContextHolder;
 
 public class PeltasListener<I, O> {
-	protected ChunkContext currentChunkContext;
+	// the chunk of each thread, chunks may be processed in parallel
+	private final ThreadLocal<ChunkContext> currentChunkContext = new ThreadLocal<>();
 
 	@BeforeChunk
 	final public void beforeChunk(ChunkContext context) {
-		currentChunkContext = context;
+		currentChunkContext.set(context);
+		MessageContextHolder.bind(context);
 		onBeforeChunk(context);
 	}
 
+	/**
+	 * @return the chunk processed by the current thread, null outside of a chunk
+	 */
+	protected ChunkContext getCurrentChunkContext() {
+		return currentChunkContext.get();
+	}
+
+	/**
+	 * binds the chunk of the calling thread to a thread processing its items
+	 */
+	void bindChunk(ChunkContext context, Map<Object, MessageContext<?>> messageContexts) {
+		currentChunkContext.set(context);
+		MessageContextHolder.bind(messageContexts);
+	}
+
+	void unbindChunk() {
+		currentChunkContext.remove();
+		MessageContextHolder.unbind();
+	}
+
 	protected void onBeforeChunk(ChunkContext context) {
 	}
 
 	@AfterChunk
 	final public void afterChunk(ChunkContext context) {
-		MessageContextHolder.clear();
+		MessageContextHolder.release(context);
 		onAfterChunk(context);
+		currentChunkContext.remove();
 	}
 
 	protected void onAfterChunk(ChunkContext context) {
@@ -57,8 +81,9 @@ public class PeltasListener<I, O> {
 
 	@AfterChunkError
 	final public void afterChunkError(ChunkContext context) {
-		MessageContextHolder.clear();
+		MessageContextHolder.release(context);
 		onChunkError(context);
+		currentChunkContext.remove();
 	}
 
 	protected void onChunkError(ChunkContext context) {
@@ -93,7 +118,7 @@ public class PeltasListener<I, O> {
 
 	@AfterWrite
 	final public void afterWrite(List<O> items) {
-		onAfterWrite(items, currentChunkContext);
+		onAfterWrite(items, getCurrentChunkContext());
 	}
 
 	protected void onAfterWrite(List<O> items, ChunkContext currentChunkContext) {
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.peltas.core.batch;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.jdbc.core.namedparam.EmptySqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.util.StringUtils;
+
+/**
+ * An <code>insert into table (columns) values(...)</code> execution whose
+ * single values row can be repeated to insert several items with one
+ * statement. The statement always returns the inserted rows: with its own
+ * <code>returning</code> clause, the key columns or all columns. The returned
+ * rows are expected in the order of the values rows, as PostgreSQL returns
+ * them for a plain multi-row insert.
+ */
+public final class PeltasMultiRowInsert {
+
+	private static final Pattern INSERT_PATTERN = Pattern
+			.compile("^\\s*insert\\s+into\\s+[^\\s(]+\\s*\\([^)]*\\)\\s*values\\s*", Pattern.CASE_INSENSITIVE);
+	private static final Pattern RETURNING_PATTERN = Pattern.compile("\\breturning\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern ON_CONFLICT_PATTERN = Pattern.compile("\\bon\\s+conflict\\b",
+			Pattern.CASE_INSENSITIVE);
+
+	private final String prefix;
+	private final ParsedSql row;
+	private final String suffix;
+
+	private PeltasMultiRowInsert(String prefix, ParsedSql row, String suffix) {
+		this.prefix = prefix;
+		this.row = row;
+		this.suffix = suffix;
+	}
+
+	/**
+	 * @return the multi-row form of the sql or null if the sql is not a single
+	 *         row insert having its named parameters in the values row only, or
+	 *         has an <code>on conflict</code> clause (conflicting rows return
+	 *         nothing, so the returned rows could not be mapped back by position)
+	 */
+	public static PeltasMultiRowInsert parse(String sql, String keyColumns) {
+		Matcher matcher = INSERT_PATTERN.matcher(sql);
+		if (!matcher.lookingAt() || sql.length() == matcher.end() || sql.charAt(matcher.end()) != '(') {
+			return null;
+		}
+
+		int rowEnd = findRowEnd(sql, matcher.end());
+		if (rowEnd < 0) {
+			return null;
+		}
+
+		String prefix = sql.substring(0, matcher.end());
+		String tail = sql.substring(rowEnd + 1).trim();
+		if (tail.endsWith(";")) {
+			tail = tail.substring(0, tail.length() - 1).trim();
+		}
+		if (tail.startsWith(",") || ON_CONFLICT_PATTERN.matcher(tail).find() || hasParameters(prefix)
+				|| hasParameters(tail)) {
+			return null;
+		}
+
+		if (!RETURNING_PATTERN.matcher(tail).find()) {
+			tail = tail + " returning " + (StringUtils.hasText(keyColumns) ? keyColumns : "*");
+		}
+
+		return new PeltasMultiRowInsert(prefix,
+				NamedParameterUtils.parseSqlStatement(sql.substring(matcher.end(), rowEnd + 1)), " " + tail.trim());
+	}
+
+	private static int findRowEnd(String sql, int start) {
+		int depth = 0;
+		boolean quoted = false;
+		for (int i = start; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+			if (c == '\'') {
+				quoted = !quoted;
+			} else if (!quoted && c == '(') {
+				depth++;
+			} else if (!quoted && c == ')' && --depth == 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean hasParameters(String sql) {
+		return !NamedParameterUtils
+				.buildSqlParameterList(NamedParameterUtils.parseSqlStatement(sql), EmptySqlParameterSource.INSTANCE)
+				.isEmpty();
+	}
+
+	/**
+	 * @return the named parameters values row
+	 */
+	public ParsedSql getRow() {
+		return row;
+	}
+
+	/**
+	 * @param substitutedRow the values row with its named parameters replaced
+	 *                       by placeholders
+	 * @param rows           the number of rows to insert
+	 */
+	public String getSql(String substitutedRow, int rows) {
+		StringBuilder sql = new StringBuilder(prefix.length() + (substitutedRow.length() + 2) * rows + suffix.length());
+		sql.append(prefix);
+		for (int i = 0; i < rows; i++) {
+			if (i > 0) {
+				sql.append(", ");
+			}
+			sql.append(substitutedRow);
+		}
+		return sql.append(suffix).toString();
+	}
+}
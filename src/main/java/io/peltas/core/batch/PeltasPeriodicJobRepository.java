@@ -0,0 +1,142 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.batch;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
+import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteException;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.JobRestartException;
+
+/**
+ * Writes the progress of running steps (counts and execution context, after
+ * every chunk) at most every <code>interval</code> milliseconds, for long
+ * running steps committing many small chunks. Everything else, including the
+ * start and the end of the steps, is written right away.
+ * <p>
+ * A stop requested through the job repository is only seen when the progress
+ * is written.
+ */
+public class PeltasPeriodicJobRepository implements JobRepository {
+
+	private final JobRepository delegate;
+	private final long interval;
+
+	private final Map<Long, Long> lastUpdates = new ConcurrentHashMap<>();
+	private final Map<Long, Long> lastContextUpdates = new ConcurrentHashMap<>();
+
+	public PeltasPeriodicJobRepository(JobRepository delegate, long interval) {
+		this.delegate = delegate;
+		this.interval = interval;
+	}
+
+	@Override
+	public void update(StepExecution stepExecution) {
+		if (isDue(stepExecution, lastUpdates)) {
+			delegate.update(stepExecution);
+		}
+	}
+
+	@Override
+	public void updateExecutionContext(StepExecution stepExecution) {
+		if (isDue(stepExecution, lastContextUpdates)) {
+			delegate.updateExecutionContext(stepExecution);
+		}
+	}
+
+	private boolean isDue(StepExecution stepExecution, Map<Long, Long> updates) {
+		Long id = stepExecution.getId();
+		if (id == null || stepExecution.getStatus() != BatchStatus.STARTED) {
+			if (id != null) {
+				updates.remove(id);
+			}
+			return true;
+		}
+
+		long now = System.currentTimeMillis();
+		Long last = updates.get(id);
+		if (last != null && now - last < interval) {
+			return false;
+		}
+		updates.put(id, now);
+		return true;
+	}
+
+	@Override
+	public boolean isJobInstanceExists(String jobName, JobParameters jobParameters) {
+		return delegate.isJobInstanceExists(jobName, jobParameters);
+	}
+
+	@Override
+	public JobInstance createJobInstance(String jobName, JobParameters jobParameters) {
+		return delegate.createJobInstance(jobName, jobParameters);
+	}
+
+	@Override
+	public JobExecution createJobExecution(JobInstance jobInstance, JobParameters jobParameters,
+			String jobConfigurationLocation) {
+		return delegate.createJobExecution(jobInstance, jobParameters, jobConfigurationLocation);
+	}
+
+	@Override
+	public JobExecution createJobExecution(String jobName, JobParameters jobParameters)
+			throws JobExecutionAlreadyRunningException, JobRestartException, JobInstanceAlreadyCompleteException {
+		return delegate.createJobExecution(jobName, jobParameters);
+	}
+
+	@Override
+	public void update(JobExecution jobExecution) {
+		delegate.update(jobExecution);
+	}
+
+	@Override
+	public void add(StepExecution stepExecution) {
+		delegate.add(stepExecution);
+	}
+
+	@Override
+	public void addAll(Collection<StepExecution> stepExecutions) {
+		delegate.addAll(stepExecutions);
+	}
+
+	@Override
+	public void updateExecutionContext(JobExecution jobExecution) {
+		delegate.updateExecutionContext(jobExecution);
+	}
+
+	@Override
+	public StepExecution getLastStepExecution(JobInstance jobInstance, String stepName) {
+		return delegate.getLastStepExecution(jobInstance, stepName);
+	}
+
+	@Override
+	public int getStepExecutionCount(JobInstance jobInstance, String stepName) {
+		return delegate.getStepExecutionCount(jobInstance, stepName);
+	}
+
+	@Override
+	public JobExecution getLastJobExecution(String jobName, JobParameters jobParameters) {
+		return delegate.getLastJobExecution(jobName, jobParameters);
+	}
+}
@@ -22,14 +22,20 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.messaging.core.GenericMessagingTemplate;
 import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import io.peltas.core.alfresco.PeltasEntry;
 import io.peltas.core.alfresco.config.PeltasHandlerProperties;
 import io.peltas.core.alfresco.integration.DoNotProcessMarker;
+import io.peltas.core.repository.PeltasCheckpoint;
+import io.peltas.core.repository.PeltasCheckpointStore;
 import io.peltas.core.repository.PeltasTimestamp;
+import io.peltas.core.repository.PeltasTimestampCheckpointStore;
 import io.peltas.core.repository.PeltasTimestampRepository;
 
 public class PeltasProcessor extends PeltasItemProcessor<PeltasEntry, PeltasDataHolder> {
@@ -39,15 +45,29 @@ public class PeltasProcessor extends PeltasItemProcessor<PeltasEntry, PeltasData
 	public static final String ID_SEPARATOR = "___";
 
 	private final String applicationName;
-	private final PeltasTimestampRepository auditRepository;
+	private final PeltasCheckpointStore checkpointStore;
 	private final AtomicInteger counter = new AtomicInteger(0);
 	private PeltasEntry lastAuditEntry;
 
+	// the committed checkpoint, null until loaded
+	private volatile CachedCheckpoint checkpoint;
+
 	public PeltasProcessor(String applicationName, GenericMessagingTemplate template,
 			PeltasTimestampRepository auditRepository) {
 		super(template);
 		this.applicationName = applicationName;
-		this.auditRepository = auditRepository;
+		this.checkpointStore = new NodesCountCheckpointStore(auditRepository);
+	}
+
+	/**
+	 * checkpoints in <code>checkpointStore</code> instead of
+	 * {@link PeltasTimestamp} entities
+	 */
+	public PeltasProcessor(String applicationName, GenericMessagingTemplate template,
+			PeltasCheckpointStore checkpointStore) {
+		super(template);
+		this.applicationName = applicationName;
+		this.checkpointStore = checkpointStore;
 	}
 
 	@Override
@@ -73,39 +93,70 @@ public class PeltasProcessor extends PeltasItemProcessor<PeltasEntry, PeltasData
 		lastAuditEntry = item;
 	}
 
+	@Override
+	protected void onBeforeStep(StepExecution stepExecution) {
+		// another node may have moved the checkpoint since the last run
+		checkpoint = null;
+	}
+
 	@Override
 	public void onBeforeChunk(ChunkContext context) {
-		PeltasTimestamp timestamp = auditRepository.findTopByApplicationNameOrderByAccessDesc(applicationName);
-		if (timestamp != null) {
-			String[] auditIdSplitted = timestamp.getRef().split(ID_SEPARATOR);
-			Integer nodesCount = nodesCountToInteger(auditIdSplitted[1]);
-			checkNodesCount(nodesCount);
+		CachedCheckpoint current = getCheckpoint();
+		if (current.nodesCount != null) {
+			checkNodesCount(current.nodesCount);
 		}
 
 		counter.set(0);
 	}
 
+	@Override
+	protected void onChunkError(ChunkContext context) {
+		// rolled back, reloaded by the next chunk
+		checkpoint = null;
+	}
+
+	private CachedCheckpoint getCheckpoint() {
+		CachedCheckpoint current = checkpoint;
+		if (current == null) {
+			PeltasCheckpoint stored = checkpointStore.find(applicationName);
+			current = new CachedCheckpoint(stored != null ? Math.toIntExact(stored.getProcessed()) : null);
+			checkpoint = current;
+		}
+		return current;
+	}
+
 	protected void checkNodesCount(Integer nodesCount) {
 
 	}
 
 	@Override
 	protected void onAfterWrite(List<PeltasDataHolder> items, ChunkContext currentChunkContext) {
-		PeltasTimestamp timestamp = (PeltasTimestamp) currentChunkContext.getAttribute("peltasTimestamp");
-		if (timestamp == null) {
-			String newRef = "1" + ID_SEPARATOR + nodesCountToString(0);
-			timestamp = new PeltasTimestamp(applicationName, newRef, new Date());
+		// every chunk has a new context, the running total is the committed one
+		Integer nodesCount = getCheckpoint().nodesCount;
+		Integer processed = (nodesCount != null ? nodesCount : 0) + counter.get();
+		checkpointStore.save(
+				new PeltasCheckpoint(applicationName, Long.parseLong(getCurrentRef()), processed, new Date()));
+
+		onCheckpointSaved(processed);
+	}
+
+	// the saved checkpoint is cached once committed with the chunk
+	private void onCheckpointSaved(Integer processed) {
+		CachedCheckpoint saved = new CachedCheckpoint(processed);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					checkpoint = status == STATUS_COMMITTED ? saved : null;
+				}
+			});
+		} else {
+			checkpoint = saved;
 		}
+	}
 
-		String[] auditIdSplitted = timestamp.getRef().split(ID_SEPARATOR);
-		Integer nodesCount = nodesCountToInteger(auditIdSplitted[1]);
-		Integer processed = nodesCount + counter.get();
-		// todo use string builder
-		String newRef = getCurrentRef() + ID_SEPARATOR + nodesCountToString(processed);
-		timestamp.setRef(newRef);
-		PeltasTimestamp peltasTimestamp;
-		peltasTimestamp = auditRepository.save(timestamp);
-		currentChunkContext.setAttribute("peltasTimestamp", peltasTimestamp);
+	public PeltasCheckpointStore getCheckpointStore() {
+		return checkpointStore;
 	}
 
 	protected String getCurrentRef() {
@@ -120,4 +171,30 @@ public class PeltasProcessor extends PeltasItemProcessor<PeltasEntry, PeltasData
 		return Integer.valueOf(nodesCount);
 	}
 
-}
\ No newline at end of file
+	// keeps the nodes count hooks for the timestamp refs
+	private class NodesCountCheckpointStore extends PeltasTimestampCheckpointStore {
+
+		NodesCountCheckpointStore(PeltasTimestampRepository timestampRepository) {
+			super(timestampRepository);
+		}
+
+		@Override
+		protected String processedToString(long processed) {
+			return nodesCountToString(Math.toIntExact(processed));
+		}
+
+		@Override
+		protected long processedToLong(String processed) {
+			return nodesCountToInteger(processed);
+		}
+	}
+
+	private static class CachedCheckpoint {
+		private final Integer nodesCount;
+
+		CachedCheckpoint(Integer nodesCount) {
+			this.nodesCount = nodesCount;
+		}
+	}
+
+}
@@ -17,6 +17,9 @@
 package io.peltas.core.config;
 
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.JobExecution;
@@ -42,8 +45,13 @@ import org.springframework.util.StringUtils;
 
 import io.peltas.core.batch.EmptyItemWriter;
 import io.peltas.core.batch.ItemRouter;
+import io.peltas.core.batch.PeltasChunkStepBuilder;
+import io.peltas.core.batch.PeltasContinuousCompletionPolicy;
+import io.peltas.core.batch.PeltasContinuousItemReader;
+import io.peltas.core.batch.PeltasDirectDispatcher;
 import io.peltas.core.batch.PeltasItemProcessor;
 import io.peltas.core.batch.PeltasListener;
+import io.peltas.core.batch.PeltasPeriodicJobRepository;
 import io.peltas.core.repository.PeltasTimestamp;
 
 @Configuration
@@ -82,8 +90,18 @@ public abstract class AbstractPeltasConfiguration<I, O> {
 
 	@Bean
 	public PeltasItemProcessor<I, O> processor() {
-		return new PeltasItemProcessor<I, O>(messagingTemplate) {
+		PeltasItemProcessor<I, O> processor = new PeltasItemProcessor<I, O>(messagingTemplate) {
 		};
+		processor.setDirectDispatcher(directDispatcher());
+		return processor;
+	}
+
+	/**
+	 * @return the dispatcher calling the router and the handlers in process, null
+	 *         (default) to send the items through the {@link #flow()}
+	 */
+	protected PeltasDirectDispatcher<I> directDispatcher() {
+		return null;
 	}
 
 	@Bean
@@ -112,16 +130,91 @@ public abstract class AbstractPeltasConfiguration<I, O> {
 			PeltasItemProcessor<I, O> peltasProcessor, PeltasListener<I, O> peltasListener) throws Exception {
 		SimpleStepBuilder<I, O> builder = stepBuilderFactory.get("peltas.entry").<I, O>chunk(getChunkSize())
 				.reader(reader()).processor(peltasProcessor).writer(peltasWriter);
+		builder = processingStepBuilder(builder);
 
 		return builder.repository(jobRepository).transactionManager(transactionManager).build();
 	}
 
+	/**
+	 * A job whose single step runs until stopped: the {@link #reader()} is
+	 * reopened to poll for new entries once exhausted, the chunks are committed
+	 * on {@link #getChunkSize()}, {@link #getCommitInterval()} or as soon as the
+	 * reader caught up, and the progress of the step is written to the job
+	 * repository every {@link #getMetadataInterval()}.
+	 */
+	public Job continuousJob() throws Exception {
+		return jobBuilderFactory.get("peltas.continuous").repository(jobRepository)
+				.start(continuousStep(writer(), processor())).build();
+	}
+
+	protected Step continuousStep(ItemWriter<O> peltasWriter, PeltasItemProcessor<I, O> peltasProcessor)
+			throws Exception {
+		PeltasContinuousItemReader<I> continuousReader = new PeltasContinuousItemReader<>(reader(),
+				getPollInterval());
+		SimpleStepBuilder<I, O> builder = stepBuilderFactory.get("peltas.continuous")
+				.<I, O>chunk(new PeltasContinuousCompletionPolicy(continuousReader, getChunkSize(),
+						getCommitInterval()))
+				.reader(continuousReader).processor(peltasProcessor).writer(peltasWriter);
+		builder = processingStepBuilder(builder);
+
+		return builder.repository(new PeltasPeriodicJobRepository(jobRepository, getMetadataInterval()))
+				.transactionManager(platformTransactionManager).build();
+	}
+
+	/**
+	 * @return the milliseconds the continuous step waits before polling again
+	 *         for new entries
+	 */
+	protected long getPollInterval() {
+		return 1000;
+	}
+
+	/**
+	 * @return the milliseconds after which a chunk of the continuous step is
+	 *         committed even if not full
+	 */
+	protected long getCommitInterval() {
+		return 1000;
+	}
+
+	/**
+	 * @return the milliseconds between two writes of the progress of the
+	 *         continuous step to the job repository
+	 */
+	protected long getMetadataInterval() {
+		return 60000;
+	}
+
+	/**
+	 * @return the builder processing whole chunks when
+	 *         {@link #isChunkProcessing()}, or the items of the chunks
+	 *         concurrently with a {@link #processingTaskExecutor()}
+	 */
+	protected SimpleStepBuilder<I, O> processingStepBuilder(SimpleStepBuilder<I, O> builder) {
+		Executor taskExecutor = processingTaskExecutor();
+		if (!isChunkProcessing() && taskExecutor == null) {
+			return builder;
+		}
+		return new PeltasChunkStepBuilder<>(builder).processorTaskExecutor(taskExecutor)
+				.processorLanes(getProcessingLanes(), processingLaneKey());
+	}
+
 	@Bean
 	public IntegrationFlow flow() {
 		ItemRouter<I> actionRouter = router();
 		return IntegrationFlows.from("peltas.entry").route(actionRouter, "handleMessage").get();
 	}
 
+	/**
+	 * routes the messages of a chunk and sends each handler its part at once
+	 */
+	@Bean
+	public IntegrationFlow chunkFlow() {
+		PeltasDirectDispatcher<I> chunkDispatcher = new PeltasDirectDispatcher<>(router());
+		return IntegrationFlows.from("peltas.chunk").<List<Message<I>>>handle(
+				(messages, headers) -> chunkDispatcher.dispatchChunk(messages, messagingTemplate)).get();
+	}
+
 	public ItemWriter<O> writer() {
 		return new EmptyItemWriter<>();
 	}
@@ -130,6 +223,37 @@ public abstract class AbstractPeltasConfiguration<I, O> {
 		return 1;
 	}
 
+	/**
+	 * whether the items of a chunk are processed in a single call, see
+	 * {@link PeltasItemProcessor#processChunk(List)}
+	 */
+	protected boolean isChunkProcessing() {
+		return false;
+	}
+
+	/**
+	 * @return the executor processing the items of a chunk concurrently, null
+	 *         (default) to process them on the thread of the step. The items are
+	 *         still written, and checkpointed, in the order they were read.
+	 */
+	protected Executor processingTaskExecutor() {
+		return null;
+	}
+
+	/**
+	 * @return the number of lanes the items of a chunk are processed in with a
+	 *         {@link #processingTaskExecutor()}, each lane processing the items
+	 *         of the same {@link #processingLaneKey()} in order. 0 (default)
+	 *         processes every item on its own.
+	 */
+	protected int getProcessingLanes() {
+		return 0;
+	}
+
+	protected Function<? super I, ?> processingLaneKey() {
+		return null;
+	}
+
 	protected JobParameters getJobParameters() {
 		return new JobParametersBuilder().addLong("auditId", System.currentTimeMillis()).toJobParameters();
 	}
@@ -24,13 +24,14 @@ import org.springframework.batch.core.configuration.annotation.ModularBatchConfi
 import org.springframework.batch.core.configuration.annotation.SimpleBatchConfiguration;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
 import org.springframework.batch.core.explore.JobExplorer;
-import org.springframework.batch.core.explore.support.MapJobExplorerFactoryBean;
+import org.springframework.batch.core.explore.support.SimpleJobExplorer;
 import org.springframework.batch.core.launch.JobLauncher;
 import org.springframework.batch.core.launch.support.SimpleJobLauncher;
 import org.springframework.batch.core.repository.JobRepository;
-import org.springframework.batch.core.repository.support.MapJobRepositoryFactoryBean;
+import org.springframework.batch.core.repository.support.SimpleJobRepository;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
@@ -44,6 +45,8 @@ import org.springframework.core.type.AnnotationMetadata;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.util.Assert;
 
+import io.peltas.core.batch.PeltasInMemoryJobStore;
+
 @Configuration
 @AutoConfigureAfter({ DataSourceTransactionManagerAutoConfiguration.class, HibernateJpaAutoConfiguration.class,
 		TransactionAutoConfiguration.class, SimpleBatchConfiguration.class, ModularBatchConfiguration.class,
@@ -51,16 +54,23 @@ import org.springframework.util.Assert;
 public class PeltasInMemoryConfiguration extends AbstractBatchConfiguration
 		implements BatchConfigurer, InitializingBean {
 
-	private MapJobRepositoryFactoryBean jobRepositoryFactory;
+	private PeltasInMemoryJobStore jobStore;
 
 	@Autowired(required = false)
 	private PlatformTransactionManager platformTransactionManager;
 
+	// executions kept per job and their maximum age in ms, 0 means unbounded
+	@Value("${peltas.repository.maxExecutions:100}")
+	private int maxExecutions;
+
+	@Value("${peltas.repository.maxAge:0}")
+	private long maxAge;
+
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		Assert.notNull(platformTransactionManager,
 				"PlatformTransactionManager is not available for Peltas.io. You should not use @EnableBatchProcessing");
-		jobRepositoryFactory = new MapJobRepositoryFactoryBean(this.platformTransactionManager);
+		jobStore = new PeltasInMemoryJobStore(maxExecutions, maxAge);
 	}
 
 	@Override
@@ -83,7 +93,7 @@ public class PeltasInMemoryConfiguration extends AbstractBatchConfiguration
 
 	@Bean
 	public JobRepository jobRepository() throws Exception {
-		return this.jobRepositoryFactory.getObject();
+		return new SimpleJobRepository(jobStore, jobStore, jobStore, jobStore);
 	}
 
 	@Bean
@@ -96,7 +106,7 @@ public class PeltasInMemoryConfiguration extends AbstractBatchConfiguration
 
 	@Bean
 	public JobExplorer jobExplorer() throws Exception {
-		return new MapJobExplorerFactoryBean(this.jobRepositoryFactory).getObject();
+		return new SimpleJobExplorer(jobStore, jobStore, jobStore, jobStore);
 	}
 
 	@ConditionalOnBean(PlatformTransactionManager.class)
@@ -112,7 +122,7 @@ public class PeltasInMemoryConfiguration extends AbstractBatchConfiguration
 
 	@Override
 	public PlatformTransactionManager getTransactionManager() throws Exception {
-		return this.jobRepositoryFactory.getTransactionManager();
+		return platformTransactionManager;
 	}
 
 	@Override
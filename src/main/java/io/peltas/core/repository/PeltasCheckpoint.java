@@ -0,0 +1,62 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.repository;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * The position of an application in the audit log: the id of the last
+ * processed entry and the number of entries processed.
+ */
+public class PeltasCheckpoint implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String applicationName;
+	private final long lastId;
+	private final long processed;
+	private final Date access;
+
+	public PeltasCheckpoint(String applicationName, long lastId, long processed, Date access) {
+		this.applicationName = applicationName;
+		this.lastId = lastId;
+		this.processed = processed;
+		this.access = access;
+	}
+
+	public String getApplicationName() {
+		return applicationName;
+	}
+
+	public long getLastId() {
+		return lastId;
+	}
+
+	public long getProcessed() {
+		return processed;
+	}
+
+	public Date getAccess() {
+		return access;
+	}
+
+	@Override
+	public String toString() {
+		return "PeltasCheckpoint [applicationName=" + applicationName + ", lastId=" + lastId + ", processed="
+				+ processed + "]";
+	}
+}
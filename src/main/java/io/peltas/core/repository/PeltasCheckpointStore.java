@@ -0,0 +1,33 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.repository;
+
+/**
+ * Stores the checkpoints of the applications. Implementations write through
+ * the transaction of the caller, so a checkpoint saved while writing a chunk
+ * is committed or rolled back with it.
+ */
+public interface PeltasCheckpointStore {
+
+	/**
+	 * @return the checkpoint of the application, null if it has none
+	 */
+	PeltasCheckpoint find(String applicationName);
+
+	void save(PeltasCheckpoint checkpoint);
+
+	void delete(String applicationName);
+}
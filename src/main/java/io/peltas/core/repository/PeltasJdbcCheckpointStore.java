@@ -0,0 +1,68 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.repository;
+
+import java.util.List;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+/**
+ * Stores the checkpoints in the <code>peltas_checkpoint</code> table with a
+ * single PostgreSQL upsert, without going through JPA. The statements run on
+ * the connection of the current transaction, when the transaction manager
+ * (e.g. the JPA one) manages the same datasource.
+ */
+public class PeltasJdbcCheckpointStore implements PeltasCheckpointStore {
+
+	static final String FIND_SQL = "select application_name, last_id, processed, access from peltas_checkpoint"
+			+ " where application_name = :applicationName";
+
+	static final String SAVE_SQL = "insert into peltas_checkpoint (application_name, last_id, processed, access)"
+			+ " values (:applicationName, :lastId, :processed, :access)"
+			+ " on conflict (application_name) do update set last_id = excluded.last_id,"
+			+ " processed = excluded.processed, access = excluded.access";
+
+	static final String DELETE_SQL = "delete from peltas_checkpoint where application_name = :applicationName";
+
+	private final NamedParameterJdbcTemplate jdbcTemplate;
+
+	public PeltasJdbcCheckpointStore(NamedParameterJdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	@Override
+	public PeltasCheckpoint find(String applicationName) {
+		List<PeltasCheckpoint> checkpoints = jdbcTemplate.query(FIND_SQL,
+				new MapSqlParameterSource("applicationName", applicationName),
+				(rs, rowNum) -> new PeltasCheckpoint(rs.getString("application_name"), rs.getLong("last_id"),
+						rs.getLong("processed"), rs.getTimestamp("access")));
+		return checkpoints.isEmpty() ? null : checkpoints.get(0);
+	}
+
+	@Override
+	public void save(PeltasCheckpoint checkpoint) {
+		jdbcTemplate.update(SAVE_SQL,
+				new MapSqlParameterSource("applicationName", checkpoint.getApplicationName())
+						.addValue("lastId", checkpoint.getLastId()).addValue("processed", checkpoint.getProcessed())
+						.addValue("access", checkpoint.getAccess()));
+	}
+
+	@Override
+	public void delete(String applicationName) {
+		jdbcTemplate.update(DELETE_SQL, new MapSqlParameterSource("applicationName", applicationName));
+	}
+}
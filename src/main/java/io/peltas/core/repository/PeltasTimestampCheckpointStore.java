@@ -0,0 +1,65 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.repository;
+
+import io.peltas.core.batch.PeltasProcessor;
+
+/**
+ * Stores the checkpoints as {@link PeltasTimestamp} entities, with
+ * <code>lastId___processed</code> refs.
+ */
+public class PeltasTimestampCheckpointStore implements PeltasCheckpointStore {
+
+	private final PeltasTimestampRepository timestampRepository;
+
+	public PeltasTimestampCheckpointStore(PeltasTimestampRepository timestampRepository) {
+		this.timestampRepository = timestampRepository;
+	}
+
+	@Override
+	public PeltasCheckpoint find(String applicationName) {
+		PeltasTimestamp timestamp = timestampRepository.findTopByApplicationNameOrderByAccessDesc(applicationName);
+		if (timestamp == null) {
+			return null;
+		}
+
+		String[] ref = timestamp.getRef().split(PeltasProcessor.ID_SEPARATOR);
+		return new PeltasCheckpoint(applicationName, Long.parseLong(ref[0]), processedToLong(ref[1]),
+				timestamp.getAccess());
+	}
+
+	@Override
+	public void save(PeltasCheckpoint checkpoint) {
+		timestampRepository.save(new PeltasTimestamp(checkpoint.getApplicationName(),
+				checkpoint.getLastId() + PeltasProcessor.ID_SEPARATOR + processedToString(checkpoint.getProcessed()),
+				checkpoint.getAccess()));
+	}
+
+	@Override
+	public void delete(String applicationName) {
+		if (timestampRepository.existsById(applicationName)) {
+			timestampRepository.deleteById(applicationName);
+		}
+	}
+
+	protected String processedToString(long processed) {
+		return Long.toString(processed);
+	}
+
+	protected long processedToLong(String processed) {
+		return Long.parseLong(processed);
+	}
+}
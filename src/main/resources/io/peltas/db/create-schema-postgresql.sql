@@ -6,6 +6,18 @@ CREATE TABLE peltas_timestamp
   CONSTRAINT peltas_timestamp_pk PRIMARY KEY (application_name),
   CONSTRAINT peltas_timestamp_unique UNIQUE (ref, application_name)
 )
+WITH (
+  OIDS=FALSE
+);
+
+CREATE TABLE peltas_checkpoint
+(
+  application_name character varying(255) NOT NULL,
+  last_id bigint NOT NULL,
+  processed bigint NOT NULL,
+  access timestamp without time zone NOT NULL,
+  CONSTRAINT peltas_checkpoint_pk PRIMARY KEY (application_name)
+)
 WITH (
   OIDS=FALSE
 );
\ No newline at end of file
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.alfresco.access;
+
+import static io.peltas.core.alfresco.PeltasAuditValues.PERSISTED_CONSTRUCTABLE;
+import static io.peltas.core.alfresco.PeltasAuditValues.PERSISTED_DOUBLE;
+import static io.peltas.core.alfresco.PeltasAuditValues.PERSISTED_LONG;
+import static io.peltas.core.alfresco.PeltasAuditValues.PERSISTED_NULL;
+import static io.peltas.core.alfresco.PeltasAuditValues.PERSISTED_SERIALIZABLE;
+import static io.peltas.core.alfresco.PeltasAuditValues.PERSISTED_STRING;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.peltas.core.alfresco.PeltasAuditValues;
+
+public class PeltasAuditValuesTest {
+
+	@Test
+	public void auditValuesRebuiltWithTypes() throws Exception {
+		PeltasAuditValues values = new PeltasAuditValues();
+		values.add(0, 0, null, map());
+		values.add(1, 0, "/peltas/action", string("CREATE"));
+		values.add(2, 0, "/peltas/size",
+				PeltasAuditValues.decode("java.lang.Long", PERSISTED_LONG, 51846L, null, null, null));
+		values.add(3, 0, "/peltas/versionable",
+				PeltasAuditValues.decode("java.lang.Boolean", PERSISTED_LONG, 1L, null, null, null));
+		values.add(4, 0, "/peltas/created",
+				PeltasAuditValues.decode("java.util.Date", PERSISTED_LONG, 1559649600000L, null, null, null));
+		values.add(5, 0, "/peltas/ratio",
+				PeltasAuditValues.decode("java.lang.Double", PERSISTED_DOUBLE, 7L, null, 0.5d, null));
+		values.add(6, 0, "/peltas/props", map());
+		values.add(7, 6, "{http://www.alfresco.org/model/content/1.0}name", string("doc.pdf"));
+		values.add(8, 6, "{http://www.alfresco.org/model/content/1.0}title",
+				PeltasAuditValues.decode("java.lang.String", PERSISTED_NULL, null, null, null, null));
+		values.add(9, 6, "{http://www.alfresco.org/model/system/1.0}locale",
+				PeltasAuditValues.decode("java.util.Locale", PERSISTED_SERIALIZABLE, 3L, null, null,
+						serialize(Locale.US)));
+		values.add(10, 0, "/peltas/aspects",
+				PeltasAuditValues.decode("java.util.HashSet", PERSISTED_CONSTRUCTABLE, null, null, null, null));
+		values.add(11, 10, null, string("cm:titled"));
+		values.add(12, 10, null, string("cm:versionable"));
+
+		Map<String, Object> auditValues = values.getValues();
+		Assertions.assertEquals("CREATE", auditValues.get("/peltas/action"));
+		Assertions.assertEquals(51846L, auditValues.get("/peltas/size"));
+		Assertions.assertEquals(Boolean.TRUE, auditValues.get("/peltas/versionable"));
+		Assertions.assertEquals(new Date(1559649600000L), auditValues.get("/peltas/created"));
+		Assertions.assertEquals(0.5d, auditValues.get("/peltas/ratio"));
+		Assertions.assertEquals(Arrays.asList("cm:titled", "cm:versionable"), auditValues.get("/peltas/aspects"));
+
+		Map<?, ?> props = (Map<?, ?>) auditValues.get("/peltas/props");
+		Assertions.assertEquals("doc.pdf", props.get("{http://www.alfresco.org/model/content/1.0}name"));
+		Assertions.assertTrue(props.containsKey("{http://www.alfresco.org/model/content/1.0}title"));
+		Assertions.assertNull(props.get("{http://www.alfresco.org/model/content/1.0}title"));
+		Assertions.assertEquals(Locale.US, props.get("{http://www.alfresco.org/model/system/1.0}locale"));
+	}
+
+	private static Object map() {
+		return PeltasAuditValues.decode("java.util.HashMap", PERSISTED_CONSTRUCTABLE, null, null, null, null);
+	}
+
+	private static Object string(String value) {
+		return PeltasAuditValues.decode("java.lang.String", PERSISTED_STRING, 1L, value, null, null);
+	}
+
+	private static byte[] serialize(Object value) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream os = new ObjectOutputStream(bytes)) {
+			os.writeObject(value);
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.peltas.alfresco.access;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Date;
+
+import org.junit.jupiter.api.Test;
+
+import io.peltas.core.alfresco.integration.PeltasConversionException;
+import io.peltas.core.alfresco.integration.PeltasDateConverter;
+
+public class PeltasDateConverterTest {
+
+	private final PeltasDateConverter converter = new PeltasDateConverter();
+
+	@Test
+	public void testDetectedFormats() {
+		Date oldAudit = converter.parse("Tue Jul 17 12:32:34 UTC 2018", null);
+		Date v1 = converter.parse("2018-07-17T12:32:34.000+0000", null);
+		assertThat(oldAudit).isEqualTo(v1);
+
+		Date summerTime = converter.parse("Thu May 07 17:19:14 CEST 2015", null);
+		assertThat(summerTime).isEqualTo(converter.parse("2015-05-07T15:19:14.000+0000", null));
+	}
+
+	@Test
+	public void testExplicitFormat() {
+		Date date = converter.parse("2018-07-17T12:32:34.596+0000", null);
+		String formatted = converter.format(date, "yyyy");
+		assertThat(formatted).isEqualTo("2018");
+		assertThat(converter.format(converter.parse("20180717", "yyyyMMdd"), "yyyyMMdd")).isEqualTo("20180717");
+
+		assertThatThrownBy(() -> converter.parse("not a date", "yyyyMMdd")).isInstanceOf(PeltasConversionException.class);
+		assertThatThrownBy(() -> converter.format(date, null)).isInstanceOf(PeltasConversionException.class);
+	}
+
+	@Test
+	public void testSimpleDateFormatPatterns() {
+		Date date = converter.parse("2018-07-17T12:32:34.596+0000", null);
+		// the day of the week with SimpleDateFormat, the year with DateTimeFormatter
+		assertThat(converter.format(date, "u")).isEqualTo("2");
+
+		// lenient parsing
+		assertThat(converter.parse("2018-02-30", "yyyy-MM-dd")).isEqualTo(converter.parse("2018-03-02", "yyyy-MM-dd"));
+	}
+}
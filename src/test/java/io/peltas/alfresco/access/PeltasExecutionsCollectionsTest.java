@@ -102,6 +102,31 @@ public class PeltasExecutionsCollectionsTest {
 		return handler.handle(message);
 	}
 
+	@Test
+	public void checkExecutionsAndCollections_mapStringConvertedIntoDeclaredType() throws Exception {
+		final PeltasEntry entry = new PeltasEntry();
+		entry.setId("123547");
+		entry.setUser("admin");
+		entry.setTime(new Timestamp(new Date().getTime()));
+		entry.setApplication("test");
+		entry.setValues(ImmutableMap.<String, Object>builder()
+				.put("/alfresco-access/transaction/properties/add",
+						"{{http://www.alfresco.org/model/system/1.0}store-protocol=workspace, "
+								+ "{http://www.alfresco.org/model/system/1.0}store-identifier=SpacesStore, "
+								+ "{http://www.alfresco.org/model/system/1.0}node-uuid=09ea11d8-810c-4e72-a9cc-ee8435af0963}")
+				.put("/alfresco-access/transaction/type", "cm:content")
+				.put("/alfresco-access/transaction/action", "CREATE")
+				.put("/alfresco-access/transaction/path", "cm:app/test")
+				.put("/alfresco-access/transaction/user", "admin").put("/alfresco-access/login/user", "test")
+				.build());
+
+		final Map<String, Object> builder = getAuditHolderForAuditEntry(entry).getBuilder();
+
+		assertEquals("workspace://SpacesStore/09ea11d8-810c-4e72-a9cc-ee8435af0963", builder.get("nodeRef"));
+		// java.util.HashMap as configured
+		assertEquals(HashMap.class, builder.get("properties1").getClass());
+	}
+
 	@Test
 	public void checkExecutionsAndCollections_documentCreatedAllOK() throws Exception {
 		final PeltasEntry entry = new PeltasEntry();
@@ -20,7 +20,16 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.doAnswer;
-
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -29,6 +38,9 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -40,6 +52,8 @@ import org.mockito.stubbing.Answer;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.messaging.Message;
@@ -292,4 +306,102 @@ public class PeltasExecutionsTest {
 		writer.write(list);
 	}
 
+	@Test
+	public void checkExecutions_documentCreatedBatched() throws Exception {
+		final List<PeltasDataHolder> list = documentCreatedItems();
+
+		final DataSource dataSource = mock(DataSource.class);
+		final Connection connection = mock(Connection.class);
+		final PreparedStatement ps = mock(PreparedStatement.class);
+		when(dataSource.getConnection()).thenReturn(connection);
+		when(connection.prepareStatement(Mockito.anyString(), Mockito.eq(Statement.RETURN_GENERATED_KEYS)))
+				.thenReturn(ps);
+
+		// every batch returns one generated id per statement: 10, 11, 12 ...
+		final AtomicInteger ids = new AtomicInteger(10);
+		final AtomicInteger statements = new AtomicInteger();
+		doAnswer(invocation -> statements.incrementAndGet()).when(ps).addBatch();
+		when(ps.getGeneratedKeys()).thenAnswer(invocation -> generatedKeys(ids, statements.getAndSet(0)));
+
+		final PeltasJdbcBatchWriter writer = new PeltasJdbcBatchWriter(
+				new NamedParameterJdbcTemplate(new JdbcTemplate(dataSource)), properties);
+		writer.setBatched(true);
+		writer.write(list);
+
+		// one batch per execution: 2 cases, 2 actions and 4 aspects
+		verify(ps, times(3)).executeBatch();
+		verify(ps, times(8)).addBatch();
+
+		// the actions reference the case ids and the aspects the action ids, in item order
+		verify(ps).setObject(1, 10);
+		verify(ps).setObject(1, 11);
+		verify(ps, times(2)).setObject(1, 12);
+		verify(ps, times(2)).setObject(1, 13);
+	}
+
+	@Test
+	public void checkExecutions_documentCreatedBatchedMissingKeys() throws Exception {
+		final List<PeltasDataHolder> list = documentCreatedItems();
+
+		final DataSource dataSource = mock(DataSource.class);
+		final Connection connection = mock(Connection.class);
+		final PreparedStatement ps = mock(PreparedStatement.class);
+		when(dataSource.getConnection()).thenReturn(connection);
+		when(connection.prepareStatement(Mockito.anyString(), Mockito.eq(Statement.RETURN_GENERATED_KEYS)))
+				.thenReturn(ps);
+
+		// a single generated id for the two case statements
+		when(ps.getGeneratedKeys()).thenAnswer(invocation -> generatedKeys(new AtomicInteger(10), 1));
+
+		final PeltasJdbcBatchWriter writer = new PeltasJdbcBatchWriter(
+				new NamedParameterJdbcTemplate(new JdbcTemplate(dataSource)), properties);
+		writer.setBatched(true);
+		Assertions.assertThrows(IncorrectResultSizeDataAccessException.class, () -> writer.write(list));
+		verify(ps, times(1)).executeBatch();
+	}
+
+	private List<PeltasDataHolder> documentCreatedItems() {
+		final ArrayList<PeltasDataHolder> list = new ArrayList<>();
+		for (String id : Arrays.asList("1", "2")) {
+			final PeltasEntry entry = new PeltasEntry();
+			entry.setId(id);
+			entry.setUser("admin");
+			entry.setTime(new Timestamp(new Date().getTime()));
+			entry.setApplication("test");
+			entry.setValues(ImmutableMap.<String, Object>builder()
+					.put("/alfresco-access/transaction/properties/add",
+							ImmutableMap.of("{http://www.alfresco.org/model/content/1.0}description",
+									ImmutableMap.of("en", "description")))
+					.put("/alfresco-access/transaction/type", "cm:content")
+					.put("/alfresco-access/transaction/action", "CREATE")
+					.put("/alfresco-access/transaction/path", "cm:app/test")
+					.put("/alfresco-access/transaction/user", "admin")
+					.put("/alfresco-access/transaction/aspects/add",
+							ImmutableList.of("{http://www.alfresco.org/model/content/1.0}indexControl",
+									"{http://www.alfresco.org/model/content/1.0}ownable"))
+					.put("/alfresco-access/login/user", "test").build());
+			list.add(getAuditHolderForAuditEntry(entry));
+		}
+		return list;
+	}
+
+	private static ResultSet generatedKeys(AtomicInteger ids, int rows) throws Exception {
+		final ResultSet rs = mock(ResultSet.class);
+		final ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+		when(metaData.getColumnCount()).thenReturn(1);
+		when(metaData.getColumnLabel(1)).thenReturn("id");
+		when(rs.getMetaData()).thenReturn(metaData);
+
+		final AtomicInteger remaining = new AtomicInteger(rows);
+		final AtomicInteger current = new AtomicInteger();
+		when(rs.next()).thenAnswer(invocation -> {
+			if (remaining.getAndDecrement() > 0) {
+				current.set(ids.getAndIncrement());
+				return true;
+			}
+			return false;
+		});
+		when(rs.getObject(1)).thenAnswer(invocation -> current.get());
+		return rs;
+	}
 }
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.peltas.alfresco.access;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import io.peltas.core.alfresco.PeltasEntry;
+import io.peltas.core.alfresco.config.PeltasHandlerMatcher;
+import io.peltas.core.alfresco.config.expression.ContainsExpressionEvaluator;
+import io.peltas.core.alfresco.config.expression.EqualsExpressionEvaluator;
+import io.peltas.core.alfresco.config.expression.EvaluatorCondition;
+import io.peltas.core.alfresco.config.expression.EvaluatorExpressionRegistry;
+
+public class PeltasHandlerMatcherTest {
+
+	private EvaluatorExpressionRegistry registry;
+
+	@BeforeEach
+	public void setup() {
+		EqualsExpressionEvaluator equalsExpressionEvaluator = new EqualsExpressionEvaluator();
+		registry = new EvaluatorExpressionRegistry(equalsExpressionEvaluator);
+		registry.registerEvaluator(new ContainsExpressionEvaluator());
+		registry.registerEvaluator(equalsExpressionEvaluator);
+	}
+
+	private PeltasEntry entry(Map<String, Object> values) {
+		PeltasEntry entry = new PeltasEntry();
+		entry.setValues(values);
+		return entry;
+	}
+
+	@Test
+	public void compile_splitsPathExpressionAndValue() {
+		EvaluatorCondition[] conditions = EvaluatorCondition.compileAll(
+				"/alfresco-access/transaction/aspects/add=contains<> cm:versionable|/a/b@cm:name=test|/a/c",
+				registry);
+
+		assertThat(conditions).hasSize(3);
+		assertThat(conditions[0].getPath()).isEqualTo("/alfresco-access/transaction/aspects/add");
+		assertThat(conditions[0].getValue()).isEqualTo("cm:versionable");
+		assertThat(conditions[0].getExpression()).isInstanceOf(ContainsExpressionEvaluator.class);
+
+		assertThat(conditions[1].getPath()).isEqualTo("/a/b");
+		assertThat(conditions[1].getNestedKey()).isEqualTo("cm:name");
+		assertThat(conditions[1].getValue()).isEqualTo("test");
+		assertThat(conditions[1].getExpression()).isInstanceOf(EqualsExpressionEvaluator.class);
+
+		assertThat(conditions[2].isPresenceOnly()).isTrue();
+		assertThat(conditions[2].getPath()).isEqualTo("/a/c");
+	}
+
+	@Test
+	public void findFirstBestMatch_allConditionsMustMatch() {
+		Map<String, String> evaluators = new LinkedHashMap<>();
+		evaluators.put("created", "/action=CREATE|/type=cm:content");
+		evaluators.put("versioned", "/aspects=contains<>cm:versionable|/action=UPDATE");
+		evaluators.put("named", "/props@cm:name=test");
+		PeltasHandlerMatcher matcher = new PeltasHandlerMatcher(evaluators, registry);
+
+		assertThat(matcher.findFirstBestMatch(entry(ImmutableMap.of("/action", "CREATE", "/type", "cm:content"))))
+				.isEqualTo("created");
+		assertThat(matcher.findFirstBestMatch(entry(ImmutableMap.of("/action", "CREATE")))).isNull();
+		assertThat(matcher.findFirstBestMatch(entry(ImmutableMap.of("/action", "UPDATE", "/aspects",
+				ImmutableList.of("cm:titled", "cm:versionable"))))).isEqualTo("versioned");
+		assertThat(matcher.findFirstBestMatch(
+				entry(ImmutableMap.of("/action", "UPDATE", "/aspects", "[cm:titled, cm:versionable]"))))
+						.isEqualTo("versioned");
+		assertThat(matcher.findFirstBestMatch(entry(ImmutableMap.of("/props", ImmutableMap.of("cm:name", "test")))))
+				.isEqualTo("named");
+	}
+
+	@Test
+	public void findFirstBestMatch_partialMatchWithMoreConditionsWins() {
+		Map<String, String> evaluators = new LinkedHashMap<>();
+		evaluators.put("single", "/action=CREATE");
+		evaluators.put("triple", "/action=CREATE|/type=cm:content|/path=/app:company_home");
+		PeltasHandlerMatcher matcher = new PeltasHandlerMatcher(evaluators, registry);
+
+		assertThat(matcher.findFirstBestMatch(entry(ImmutableMap.of("/action", "CREATE")))).isEqualTo("single");
+		assertThat(matcher.findFirstBestMatch(entry(ImmutableMap.of("/action", "CREATE", "/type", "cm:content"))))
+				.isNull();
+	}
+
+	@Test
+	public void findFirstBestMatch_tieGoesToFirstConfiguredHandler() {
+		Map<String, String> evaluators = new LinkedHashMap<>();
+		evaluators.put("versioned", "/aspects=contains<>cm:versionable|/type=cm:content");
+		evaluators.put("created", "/action=CREATE|/type=cm:content");
+		evaluators.put("present", "/action|/type=cm:content");
+		PeltasHandlerMatcher matcher = new PeltasHandlerMatcher(evaluators, registry);
+
+		assertThat(matcher.findFirstBestMatch(entry(ImmutableMap.of("/action", "CREATE", "/type", "cm:content",
+				"/aspects", ImmutableList.of("cm:versionable"))))).isEqualTo("versioned");
+		assertThat(matcher.findFirstBestMatch(entry(ImmutableMap.of("/action", "CREATE", "/type", "cm:content"))))
+				.isEqualTo("created");
+		assertThat(matcher.findFirstBestMatch(entry(ImmutableMap.of("/action", "DELETE", "/type", "cm:content"))))
+				.isEqualTo("present");
+		assertThat(matcher.findFirstBestMatch(entry(ImmutableMap.of("/action", "DELETE", "/type", "cm:folder"))))
+				.isNull();
+	}
+}
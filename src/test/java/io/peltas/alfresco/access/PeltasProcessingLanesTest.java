@@ -0,0 +1,119 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.alfresco.access;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ItemReader;
+import org.springframework.messaging.core.GenericMessagingTemplate;
+
+import com.google.common.collect.ImmutableMap;
+
+import io.peltas.core.alfresco.PeltasEntry;
+import io.peltas.core.alfresco.config.AbstractAlfrescoPeltasConfiguration;
+import io.peltas.core.batch.PeltasDirectDispatcher;
+import io.peltas.core.batch.PeltasItemProcessor;
+
+public class PeltasProcessingLanesTest {
+
+	private static final String DOC1 = "/app:company_home/cm:doc1";
+	private static final String DOC2 = "/app:company_home/cm:doc2";
+
+	@Test
+	public void updateWithoutNodeUuidMappedAfterCreate() throws Exception {
+		PeltasEntry created1 = entry("1", "CREATE", DOC1, "uuid1");
+		PeltasEntry created2 = entry("2", "CREATE", DOC2, "uuid2");
+		// alfresco records the node uuid in the added properties on creation only
+		PeltasEntry updated1 = entry("3", "updateNodeProperties", DOC1, null);
+
+		Function<PeltasEntry, Object> laneKey = new LanesConfiguration().processingLaneKey();
+		assertEquals(laneKey.apply(created1), laneKey.apply(updated1));
+
+		List<String> handled = new CopyOnWriteArrayList<>();
+		CountDownLatch created2Completed = new CountDownLatch(1);
+
+		PeltasItemProcessor<PeltasEntry, String> processor = new PeltasItemProcessor<PeltasEntry, String>(
+				mock(GenericMessagingTemplate.class)) {
+		};
+		processor.setDirectDispatcher(new PeltasDirectDispatcher<PeltasEntry>(message -> "direct").handler("direct",
+				message -> {
+					PeltasEntry entry = message.getPayload();
+					if (entry == created1) {
+						// the update of the node would overtake its creation in another lane
+						try {
+							assertTrue(created2Completed.await(5, TimeUnit.SECONDS));
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+					handled.add(entry.getId());
+					if (entry == created2) {
+						created2Completed.countDown();
+					}
+					return entry.getId();
+				}));
+
+		ExecutorService taskExecutor = Executors.newFixedThreadPool(4);
+		try {
+			// the paths of the two nodes hash onto different lanes
+			processor.processInLanes(Arrays.asList(created1, created2, updated1), taskExecutor, 4, laneKey);
+		} finally {
+			taskExecutor.shutdown();
+		}
+
+		assertEquals(Arrays.asList("2", "1", "3"), handled);
+	}
+
+	private static PeltasEntry entry(String id, String action, String path, String uuid) {
+		ImmutableMap.Builder<String, Object> values = ImmutableMap.<String, Object>builder()
+				.put("/alfresco-access/transaction/action", action)
+				.put("/alfresco-access/transaction/type", "cm:content")
+				.put("/alfresco-access/transaction/path", path);
+		if (uuid != null) {
+			values.put("/alfresco-access/transaction/properties/add",
+					ImmutableMap.of("{http://www.alfresco.org/model/system/1.0}node-uuid", uuid));
+		}
+
+		PeltasEntry entry = new PeltasEntry();
+		entry.setId(id);
+		entry.setValues(values.build());
+		return entry;
+	}
+
+	private static class LanesConfiguration extends AbstractAlfrescoPeltasConfiguration {
+		@Override
+		public Function<PeltasEntry, Object> processingLaneKey() {
+			return super.processingLaneKey();
+		}
+
+		@Override
+		public ItemReader<PeltasEntry> reader() {
+			return null;
+		}
+	}
+}
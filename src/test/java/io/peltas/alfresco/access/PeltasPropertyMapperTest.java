@@ -119,6 +119,32 @@ public class PeltasPropertyMapperTest {
 		assertThat(((Map<?, ?>) builder.get("content")).get("mimetype")).isEqualTo("text/xml");
 	}
 
+	@Test
+	public void checkPropertyMapping_auditMapStringIsParsedOnDemand() {
+		PeltasEntry entry = new PeltasEntry();
+		entry.setValues(ImmutableMap.<String, Object>builder().put("/alfresco-access/transaction/properties/add",
+				"{{http://www.alfresco.org/model/content/1.0}description={en=description}, "
+						+ "{http://www.alfresco.org/model/content/1.0}created=Thu Jun 14 13:44:58 UTC 2018, "
+						+ "{http://www.alfresco.org/model/system/1.0}store-protocol=workspace, "
+						+ "{http://www.alfresco.org/model/system/1.0}store-identifier=SpacesStore, "
+						+ "{http://www.alfresco.org/model/system/1.0}node-uuid=09ea11d8-810c-4e72-a9cc-ee8435af0963}")
+				.put("/alfresco-access/transaction/type", "cm:content")
+				.put("/alfresco-access/transaction/action", "CREATE").put("/alfresco-access/login/user", "test")
+				.build());
+
+		String documentcreatedHandler = pipeline.findFirstBestMatchHandler(entry);
+		assertThat(documentcreatedHandler).isEqualTo("documentcreated");
+
+		Message<PeltasEntry> message = MessageBuilder.withPayload(entry)
+				.setHeader("alfresco.handler.configuration", pipeline.getForHandler(documentcreatedHandler)).build();
+		Map<String, Object> builder = new PeltasHandler().handle(message).getBuilder();
+
+		assertThat(builder.get("nodeRef")).isEqualTo("workspace://SpacesStore/09ea11d8-810c-4e72-a9cc-ee8435af0963");
+		assertThat(builder.get("created")).isInstanceOf(Date.class);
+		assertThat(((Map<?, ?>) builder.get("description")).get("en")).isEqualTo("description");
+		assertThat(builder.get("content")).isNull();
+	}
+
 	@Test
 	public void invalidDateFormat_alfrescoAuditHolderIsNotNullAndContainsMappedProperties() {
 		PeltasEntry entry = new PeltasEntry();
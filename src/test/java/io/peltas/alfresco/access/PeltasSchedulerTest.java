@@ -0,0 +1,107 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.alfresco.access;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.launch.JobLauncher;
+
+import io.peltas.core.alfresco.PeltasScheduler;
+
+public class PeltasSchedulerTest {
+
+	@Test
+	public void drainsFullPagesAndBacksOffWhenEmpty() throws Exception {
+		Job job = mock(Job.class);
+		JobLauncher jobLauncher = mock(JobLauncher.class);
+		Iterator<Integer> readCounts = Arrays.asList(100, 100, 40, 0, 0, 0, 5).iterator();
+		when(jobLauncher.run(eq(job), any(JobParameters.class)))
+				.thenAnswer(invocation -> execution(readCounts.next()));
+
+		PeltasScheduler scheduler = new PeltasScheduler(jobLauncher, job);
+		scheduler.setDelay(1000);
+		scheduler.setMaxDelay(4000);
+		scheduler.setFullPageSize(100);
+
+		// the two full pages and the partial one in a single tick
+		scheduler.alfrescoAuditTask();
+		verify(jobLauncher, times(3)).run(eq(job), any(JobParameters.class));
+		Assertions.assertEquals(1000, scheduler.getPollInterval());
+		Assertions.assertEquals(40, scheduler.getLastReadCount());
+		// not provided without an estimator
+		Assertions.assertEquals(-1, scheduler.getBacklogEstimate());
+		scheduler.setBacklogEstimator(() -> 1200);
+		Assertions.assertEquals(1200, scheduler.getBacklogEstimate());
+
+		// empty: 2s, one tick skipped
+		scheduler.alfrescoAuditTask();
+		Assertions.assertEquals(2000, scheduler.getPollInterval());
+		scheduler.alfrescoAuditTask();
+		verify(jobLauncher, times(4)).run(eq(job), any(JobParameters.class));
+
+		// empty: 4s, three ticks skipped
+		scheduler.alfrescoAuditTask();
+		Assertions.assertEquals(4000, scheduler.getPollInterval());
+		for (int i = 0; i < 3; i++) {
+			scheduler.alfrescoAuditTask();
+		}
+		verify(jobLauncher, times(5)).run(eq(job), any(JobParameters.class));
+
+		// capped
+		scheduler.alfrescoAuditTask();
+		Assertions.assertEquals(4000, scheduler.getPollInterval());
+		for (int i = 0; i < 3; i++) {
+			scheduler.alfrescoAuditTask();
+		}
+
+		// entries again, back to the fixed delay
+		scheduler.alfrescoAuditTask();
+		verify(jobLauncher, times(7)).run(eq(job), any(JobParameters.class));
+		Assertions.assertEquals(1000, scheduler.getPollInterval());
+
+		// a new job instance for every run, even within the same millisecond
+		ArgumentCaptor<JobParameters> parameters = ArgumentCaptor.forClass(JobParameters.class);
+		verify(jobLauncher, times(7)).run(eq(job), parameters.capture());
+		for (int i = 1; i < parameters.getAllValues().size(); i++) {
+			Assertions.assertTrue(parameters.getAllValues().get(i).getLong("auditId") > parameters.getAllValues()
+					.get(i - 1).getLong("auditId"));
+		}
+	}
+
+	private static JobExecution execution(int readCount) {
+		JobExecution execution = new JobExecution(1L);
+		execution.setExitStatus(ExitStatus.COMPLETED);
+		StepExecution stepExecution = execution.createStepExecution("peltas.entry");
+		stepExecution.setReadCount(readCount);
+		return execution;
+	}
+}
@@ -84,6 +84,7 @@ public class PeltasStaticPropertyMapperTest {
 		assertThat(builder.get("action")).isEqualTo("READ");
 		assertThat(builder.get("user")).isEqualTo("test");
 		assertThat(builder.get("creator")).isEqualTo("test");
+		assertThat(builder.get("lastModifier")).isEqualTo("test");
 		assertThat(builder.get("static")).isEqualTo("static property");
 		assertThat(builder.get("static2")).isEqualTo("static property 2");
 
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.peltas.alfresco.access;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import io.peltas.core.alfresco.PeltasException;
+import io.peltas.core.alfresco.config.Pipeline;
+import io.peltas.core.alfresco.config.PipelineCollection;
+import io.peltas.core.alfresco.config.PipelineExecution;
+import io.peltas.core.alfresco.config.PipelineExecutionGraph;
+
+public class PipelineExecutionGraphTest {
+
+	private final Map<String, PipelineExecution> executions = new HashMap<>();
+
+	private void execution(String key, String sql) {
+		PipelineExecution execution = new PipelineExecution();
+		execution.setConfig(ImmutableMap.of("sql", sql));
+		executions.put(key, execution);
+	}
+
+	private Pipeline pipeline(String... executions) {
+		Pipeline pipeline = new Pipeline();
+		pipeline.setExecutions(Arrays.asList(executions));
+		return pipeline;
+	}
+
+	@Test
+	public void independentExecutionsShareALevel() {
+		execution("node", "insert into node (uuid) values(:uuid)");
+		execution("user", "insert into users (name) values(:user)");
+		execution("action", "insert into action (node_id, user_id, time) values(:node.id, :user.id, :audit.time)");
+		execution("aspect", "insert into aspect (action_id, aspect) values(:action.id, :aspect.name)");
+
+		Pipeline pipeline = pipeline("node", "user", "action");
+		PipelineCollection aspects = new PipelineCollection();
+		aspects.setExecutions(Arrays.asList("aspect"));
+		pipeline.setCollections(ImmutableMap.of("aspect", aspects));
+
+		PipelineExecutionGraph graph = new PipelineExecutionGraph("test", pipeline, executions::get);
+
+		assertThat(graph.getLevels()).containsExactly(Arrays.asList("node", "user"), Arrays.asList("action"));
+		assertThat(graph.getCollectionLevels("aspect")).containsExactly(Arrays.asList("aspect"));
+		assertThat(graph.getCollectionLevels("unknown")).isEmpty();
+	}
+
+	@Test
+	public void unknownExecutionIsRejected() {
+		execution("node", "insert into node (uuid) values(:uuid)");
+		execution("action", "insert into action (node_id) values(:nodes.id)");
+
+		assertThatThrownBy(() -> new PipelineExecutionGraph("test", pipeline("node", "action"), executions::get))
+				.isInstanceOf(PeltasException.class).hasMessageContaining("nodes");
+	}
+
+	@Test
+	public void executionRunningAfterIsRejected() {
+		execution("node", "insert into node (uuid, action_id) values(:uuid, :action.id)");
+		execution("action", "insert into action (name) values(:action)");
+
+		assertThatThrownBy(() -> new PipelineExecutionGraph("test", pipeline("node", "action"), executions::get))
+				.isInstanceOf(PeltasException.class).hasMessageContaining("action");
+	}
+
+	@Test
+	public void copiedInsertOnlyReferenceIsRejected() {
+		execution("node", "insert into node (uuid) values(:uuid)");
+		executions.get("node")
+				.setConfig(ImmutableMap.of("sql", "insert into node (uuid) values(:uuid)", "insertonly", "true"));
+		execution("action", "insert into action (node_id) values(:node.id)");
+
+		Pipeline pipeline = pipeline("node", "action");
+		// sent as a jdbc batch, the keys are returned
+		new PipelineExecutionGraph("test", pipeline, executions::get);
+
+		pipeline.setWriter("copyhandler");
+		assertThatThrownBy(() -> new PipelineExecutionGraph("test", pipeline, executions::get))
+				.isInstanceOf(PeltasException.class).hasMessageContaining("insert-only");
+	}
+}
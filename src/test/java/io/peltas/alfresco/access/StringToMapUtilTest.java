@@ -16,6 +16,8 @@
 
 package io.peltas.alfresco.access;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.jupiter.api.Assertions;
@@ -92,4 +94,65 @@ public class StringToMapUtilTest {
 		String someProperty = (String) map.get("{http://www.alfresco.org/model/content/1.0}someProperty");
 		Assertions.assertNull(someProperty);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testStructuredMap() {
+		String alfrescoPrefixtring = "{cm:title=[{locale=en_US_, value=Start Pooled Review and Approve Workflow}], "
+				+ "custom:propertyNo=[191732, 242232], cm:content={contentId=234, encoding=UTF-8, size=1490}, "
+				+ "custom:someProperty=null}";
+
+		Map<String, Object> map = StringToMapUtil.stringToStructuredMap(alfrescoPrefixtring, ',');
+
+		List<?> propertyNo = (List<?>) map.get("custom:propertyNo");
+		Assertions.assertEquals(2, propertyNo.size());
+		Assertions.assertEquals("242232", propertyNo.get(1));
+
+		List<?> title = (List<?>) map.get("cm:title");
+		Assertions.assertEquals(1, title.size());
+		Assertions.assertEquals("en_US_", ((Map<?, ?>) title.get(0)).get("locale"));
+
+		Map<?, ?> content = (Map<?, ?>) map.get("cm:content");
+		Assertions.assertEquals("UTF-8", content.get("encoding"));
+
+		Assertions.assertTrue(map.containsKey("custom:someProperty"));
+		Assertions.assertNull(map.get("custom:someProperty"));
+	}
+
+	@Test
+	public void testValueAsList() {
+		List<Object> aspects = StringToMapUtil.valueAsList("[cm:titled, cm:auditable]");
+		Assertions.assertEquals(Arrays.asList("cm:titled", "cm:auditable"), aspects);
+
+		// nested maps are not split on their delimiters
+		List<Object> titles = StringToMapUtil
+				.valueAsList("[{locale=en_US_, value=Review}, {locale=fr_FR_, value=Revue}]");
+		Assertions.assertEquals(2, titles.size());
+		Assertions.assertEquals("fr_FR_", ((Map<?, ?>) titles.get(1)).get("locale"));
+
+		Assertions.assertTrue(StringToMapUtil.valueAsList("[]").isEmpty());
+	}
+
+	@Test
+	public void testLazyMap() {
+		String alfrescoPrefixtring = "{cm:creator=System, custom:propertyNo=[191732, 242232], cm:content={contentId=234, size=1490}, "
+				+ "custom:someProperty=null}";
+
+		Map<String, Object> lazy = StringToMapUtil.lazyStringToMap(alfrescoPrefixtring, ',');
+
+		Assertions.assertEquals("System", lazy.get("cm:creator"));
+		Assertions.assertEquals(4, lazy.size());
+		Assertions.assertEquals(StringToMapUtil.stringToMap(alfrescoPrefixtring, ','), lazy);
+	}
+
+	@Test
+	public void testLazyMapDuplicateKey() {
+		String duplicated = "{cm:name=first, cm:title=title, cm:name=last}";
+
+		Map<String, Object> lazy = StringToMapUtil.lazyStringToMap(duplicated, ',');
+
+		// the last value, as the eager map
+		Assertions.assertEquals("last", lazy.get("cm:name"));
+		Assertions.assertEquals(2, lazy.size());
+		Assertions.assertEquals(StringToMapUtil.stringToMap(duplicated, ','), lazy);
+	}
+}
@@ -18,6 +18,7 @@ package io.peltas.core.batch;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.io.FileReader;
 import java.util.List;
@@ -32,6 +33,7 @@ import org.springframework.test.web.client.match.MockRestRequestMatchers;
 import org.springframework.test.web.client.response.MockRestResponseCreators;
 import org.springframework.util.FileCopyUtils;
 import org.springframework.util.ResourceUtils;
+import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestTemplate;
 
 //@TestPropertySource(locations = "classpath:application.properties")
@@ -81,4 +83,94 @@ public class AbstractPeltasRestReaderTest {
 		read = reader.read();
 		assertNull(read);
 	}
+
+	@Test
+	public void pagedByLastId() throws Exception {
+		reader = pagedReader();
+		reader.setPageSize(2);
+
+		expectPage("/testdata?limit=2", "{\"data\":[{\"field1\":\"1\"},{\"field1\":\"2\"}]}");
+		expectPage("/testdata?fromId=2&limit=2", "{\"data\":[{\"field1\":\"3\"},{\"field1\":\"4\"}]}");
+		expectPage("/testdata?fromId=4&limit=2", "{\"data\":[{\"field1\":\"5\"}]}");
+
+		reader.open(new ExecutionContext());
+
+		for (int i = 1; i <= 5; i++) {
+			assertEquals(String.valueOf(i), reader.read().getField1());
+		}
+		// the last page was short, no further request is made
+		assertNull(reader.read());
+		mockServer.verify();
+	}
+
+	@Test
+	public void pagedPrefetched() throws Exception {
+		reader = pagedReader();
+		reader.setPageSize(2);
+		reader.setPrefetchPages(2);
+
+		expectPage("/testdata?limit=2", "{\"data\":[{\"field1\":\"1\"},{\"field1\":\"2\"}]}");
+		expectPage("/testdata?fromId=2&limit=2", "{\"data\":[{\"field1\":\"3\"},{\"field1\":\"4\"}]}");
+		expectPage("/testdata?fromId=4&limit=2", "{\"data\":[{\"field1\":\"5\"}]}");
+
+		reader.open(new ExecutionContext());
+
+		for (int i = 1; i <= 5; i++) {
+			assertEquals(String.valueOf(i), reader.read().getField1());
+		}
+		assertNull(reader.read());
+		mockServer.verify();
+		reader.close();
+	}
+
+	@Test
+	public void pagedPrefetchedErrorAfterPreviousPage() throws Exception {
+		reader = pagedReader();
+		reader.setPageSize(2);
+		reader.setPrefetchPages(2);
+
+		expectPage("/testdata?limit=2", "{\"data\":[{\"field1\":\"1\"},{\"field1\":\"2\"}]}");
+		mockServer.expect(MockRestRequestMatchers.requestTo("/testdata?fromId=2&limit=2"))
+				.andRespond(MockRestResponseCreators.withServerError());
+
+		reader.open(new ExecutionContext());
+
+		// the failure of the prefetched page surfaces only once the first page is read
+		assertEquals("1", reader.read().getField1());
+		assertEquals("2", reader.read().getField1());
+		assertThrows(HttpServerErrorException.class, () -> reader.read());
+		reader.close();
+	}
+
+	private AbstractPeltasRestReader<TestData, TestDataResponse> pagedReader() {
+		return new AbstractPeltasRestReader<TestData, TestDataResponse>("test", mockRestTemplate()) {
+
+			@Override
+			protected List<TestData> retreiveCollection(TestDataResponse response) {
+				return response.getData();
+			}
+
+			@Override
+			protected String getQueryString() {
+				return "testdata?limit=" + getPageSize();
+			}
+
+			@Override
+			protected String getNextPageQueryString(TestData lastEntry) {
+				return "testdata?fromId=" + lastEntry.getField1() + "&limit=" + getPageSize();
+			}
+		};
+	}
+
+	private RestTemplate mockRestTemplate() {
+		final RestTemplate restTemplate = new RestTemplate();
+		mockServer = MockRestServiceServer.createServer(restTemplate);
+		return restTemplate;
+	}
+
+	private void expectPage(String url, String json) {
+		mockServer.expect(MockRestRequestMatchers.requestTo(url))
+				.andExpect(MockRestRequestMatchers.method(HttpMethod.GET))
+				.andRespond(MockRestResponseCreators.withSuccess(json, MediaType.APPLICATION_JSON));
+	}
 }
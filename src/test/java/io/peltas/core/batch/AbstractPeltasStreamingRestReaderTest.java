@@ -0,0 +1,119 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.client.match.MockRestRequestMatchers;
+import org.springframework.test.web.client.response.MockRestResponseCreators;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import io.peltas.core.alfresco.PeltasEntry;
+
+public class AbstractPeltasStreamingRestReaderTest {
+
+	private MockRestServiceServer mockServer;
+
+	private AbstractPeltasStreamingRestReader reader;
+
+	@BeforeEach
+	public void setup() {
+		final RestTemplate restTemplate = new RestTemplate();
+		mockServer = MockRestServiceServer.createServer(restTemplate);
+
+		reader = new AbstractPeltasStreamingRestReader("test", restTemplate) {
+
+			@Override
+			protected String getQueryString() {
+				return "audit?limit=" + getPageSize();
+			}
+
+			@Override
+			protected String getNextPageQueryString(PeltasEntry lastEntry) {
+				return "audit?fromId=" + (Long.parseLong(lastEntry.getId()) + 1) + "&limit=" + getPageSize();
+			}
+		};
+		reader.setPageSize(2);
+		reader.setBufferSize(1);
+	}
+
+	@AfterEach
+	public void close() {
+		reader.close();
+	}
+
+	@Test
+	public void auditEntriesStreamedByPage() throws Exception {
+		expect("/audit?limit=2", "{\"count\":2,\"entries\":[" //
+				+ "{\"id\":1,\"application\":\"peltas\",\"user\":\"admin\",\"time\":\"2019-06-04T12:00:00.000+0000\","
+				+ "\"values\":{\"/peltas/action\":\"CREATE\",\"/peltas/props\":{\"cm:name\":\"doc\"}}},"
+				+ "{\"id\":2,\"application\":\"peltas\",\"user\":\"admin\",\"values\":{}}]}");
+		expect("/audit?fromId=3&limit=2", "{\"list\":{\"pagination\":{\"count\":1},\"entries\":[" //
+				+ "{\"entry\":{\"id\":3,\"auditApplicationId\":\"peltas\",\"createdByUser\":{\"id\":\"admin\"},"
+				+ "\"createdAt\":\"2019-06-04T12:00:01.000+0000\",\"values\":{\"/peltas/action\":\"UPDATE\"}}}]}}");
+
+		reader.open(new ExecutionContext());
+
+		PeltasEntry entry = reader.read();
+		assertEquals("1", entry.getId());
+		assertEquals("admin", entry.getUser());
+		assertEquals(1559649600000L, entry.getTime().getTime());
+		assertEquals("CREATE", entry.getValues().get("/peltas/action"));
+		assertEquals("doc", ((Map<?, ?>) entry.getValues().get("/peltas/props")).get("cm:name"));
+
+		assertEquals("2", reader.read().getId());
+
+		entry = reader.read();
+		assertEquals("3", entry.getId());
+		assertEquals("peltas", entry.getApplication());
+		assertEquals("UPDATE", entry.getValues().get("/peltas/action"));
+
+		// the last page was short
+		assertNull(reader.read());
+		mockServer.verify();
+	}
+
+	@Test
+	public void requestErrorAfterPreviousEntries() throws Exception {
+		expect("/audit?limit=2", "{\"entries\":[{\"id\":1},{\"id\":2}]}");
+		mockServer.expect(MockRestRequestMatchers.requestTo("/audit?fromId=3&limit=2"))
+				.andRespond(MockRestResponseCreators.withServerError());
+
+		reader.open(new ExecutionContext());
+
+		assertEquals("1", reader.read().getId());
+		assertEquals("2", reader.read().getId());
+		assertThrows(HttpServerErrorException.class, () -> reader.read());
+	}
+
+	private void expect(String url, String json) {
+		mockServer.expect(MockRestRequestMatchers.requestTo(url))
+				.andExpect(MockRestRequestMatchers.method(HttpMethod.GET))
+				.andRespond(MockRestResponseCreators.withSuccess(json, MediaType.APPLICATION_JSON));
+	}
+}
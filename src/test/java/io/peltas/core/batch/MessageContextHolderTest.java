@@ -0,0 +1,122 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.batch;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+
+import io.peltas.core.batch.MessageContext.MessageContextHolder;
+
+public class MessageContextHolderTest {
+
+	@Test
+	public void chunksOnDifferentThreadsKeepTheirContexts() throws Exception {
+		PeltasListener<String, String> listener = new PeltasListener<>();
+		ChunkContext first = chunkContext();
+		ChunkContext second = chunkContext();
+
+		CountDownLatch added = new CountDownLatch(2);
+		CountDownLatch released = new CountDownLatch(1);
+
+		CompletableFuture<Void> firstChunk = CompletableFuture.runAsync(() -> {
+			listener.beforeChunk(first);
+			MessageContextHolder.addMessageContext(messageContext(first, "item"));
+			added.countDown();
+			await(added);
+			listener.afterChunk(first);
+			released.countDown();
+		});
+
+		CompletableFuture<MessageContext<String>> secondChunk = CompletableFuture.supplyAsync(() -> {
+			listener.beforeChunk(second);
+			MessageContextHolder.addMessageContext(messageContext(second, "item"));
+			added.countDown();
+			await(released);
+			// the first chunk releasing its contexts leaves this one alone
+			MessageContext<String> messageContext = MessageContextHolder.getMessageContext("item");
+			listener.afterChunk(second);
+			return messageContext;
+		});
+
+		firstChunk.get(5, TimeUnit.SECONDS);
+		MessageContext<String> messageContext = secondChunk.get(5, TimeUnit.SECONDS);
+		assertNotNull(messageContext);
+		assertSame(second, messageContext.getChunkContext());
+		assertNull(first.getAttribute(MessageContextHolder.CHUNK_ATTRIBUTE));
+		assertNull(second.getAttribute(MessageContextHolder.CHUNK_ATTRIBUTE));
+	}
+
+	@Test
+	public void workerThreadBoundToChunk() throws Exception {
+		ChunkContext chunkContext = chunkContext();
+		Map<Object, MessageContext<?>> messageContexts = MessageContextHolder.bind(chunkContext);
+		try {
+			MessageContext<String> messageContext = messageContext(chunkContext, "item");
+			MessageContextHolder.addMessageContext(messageContext);
+
+			MessageContext<String> fromWorker = CompletableFuture.supplyAsync(() -> {
+				MessageContextHolder.bind(messageContexts);
+				try {
+					return MessageContextHolder.getMessageContext("item");
+				} finally {
+					MessageContextHolder.unbind();
+				}
+			}).get(5, TimeUnit.SECONDS);
+
+			assertSame(messageContext, fromWorker);
+		} finally {
+			MessageContextHolder.release(chunkContext);
+		}
+		assertNull(MessageContextHolder.getMessageContext("item"));
+	}
+
+	@Test
+	public void nothingBoundOutsideOfAChunk() {
+		MessageContextHolder.addMessageContext(messageContext(chunkContext(), "item"));
+
+		// a pooled thread keeps no contexts for its next task
+		assertNull(MessageContextHolder.getMessageContext("item"));
+	}
+
+	private static ChunkContext chunkContext() {
+		return new ChunkContext(new StepContext(new StepExecution("test", null)));
+	}
+
+	private static MessageContext<String> messageContext(ChunkContext chunkContext, String item) {
+		MessageContext<String> messageContext = new MessageContext<>(chunkContext);
+		messageContext.setItem(item);
+		return messageContext;
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
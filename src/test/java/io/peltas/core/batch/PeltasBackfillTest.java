@@ -0,0 +1,97 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.batch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.batch.item.ExecutionContext;
+
+import io.peltas.core.alfresco.PeltasException;
+import io.peltas.core.repository.PeltasTimestamp;
+import io.peltas.core.repository.PeltasTimestampCheckpointStore;
+import io.peltas.core.repository.PeltasTimestampRepository;
+
+public class PeltasBackfillTest {
+
+	@Test
+	public void idRangesCoverTheWholeRange() {
+		Map<String, ExecutionContext> partitions = new PeltasIdRangePartitioner(100, 110).partition(4);
+
+		List<String> ranges = new ArrayList<>();
+		for (ExecutionContext context : partitions.values()) {
+			ranges.add(context.getLong(PeltasIdRangePartitioner.FROM_ID) + "-"
+					+ context.getLong(PeltasIdRangePartitioner.TO_ID));
+		}
+		assertEquals(Arrays.asList("100-103", "103-106", "106-108", "108-110"), ranges);
+
+		// never more partitions than ids
+		assertEquals(2, new PeltasIdRangePartitioner(5, 7).partition(4).size());
+	}
+
+	@Test
+	public void partitionCheckpointsMergedIntoLiveCheckpoint() throws Exception {
+		PeltasTimestampRepository repository = mock(PeltasTimestampRepository.class);
+		when(repository.findTopByApplicationNameOrderByAccessDesc("app.backfill.partition0"))
+				.thenReturn(new PeltasTimestamp("app.backfill.partition0", "499___120", new Date()));
+		when(repository.findTopByApplicationNameOrderByAccessDesc("app.backfill.partition1"))
+				.thenReturn(new PeltasTimestamp("app.backfill.partition1", "998___80", new Date()));
+		when(repository.findTopByApplicationNameOrderByAccessDesc("app"))
+				.thenReturn(new PeltasTimestamp("app", "20___5", new Date()));
+		when(repository.existsById(any())).thenReturn(true);
+
+		new PeltasBackfillMergeTasklet(new PeltasTimestampCheckpointStore(repository), "app",
+				Arrays.asList("app.backfill.partition0", "app.backfill.partition1"), 21, 1000).execute(null, null);
+
+		ArgumentCaptor<PeltasTimestamp> live = ArgumentCaptor.forClass(PeltasTimestamp.class);
+		verify(repository).save(live.capture());
+		assertEquals("app", live.getValue().getApplicationName());
+		assertEquals("999___205", live.getValue().getRef());
+		verify(repository).deleteById("app.backfill.partition0");
+		verify(repository).deleteById("app.backfill.partition1");
+	}
+
+	@Test
+	public void liveCheckpointBelowTheRangeNotMoved() throws Exception {
+		PeltasTimestampRepository repository = mock(PeltasTimestampRepository.class);
+		when(repository.findTopByApplicationNameOrderByAccessDesc("app.backfill.partition0"))
+				.thenReturn(new PeltasTimestamp("app.backfill.partition0", "999___120", new Date()));
+		when(repository.findTopByApplicationNameOrderByAccessDesc("app"))
+				.thenReturn(new PeltasTimestamp("app", "20___5", new Date()));
+
+		// 21 to 499 were never processed
+		PeltasBackfillMergeTasklet tasklet = new PeltasBackfillMergeTasklet(
+				new PeltasTimestampCheckpointStore(repository), "app", Arrays.asList("app.backfill.partition0"), 500,
+				1000);
+		assertThrows(PeltasException.class, () -> tasklet.execute(null, null));
+
+		verify(repository, never()).save(any());
+		verify(repository, never()).deleteById(any());
+	}
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.batch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.listener.ItemListenerSupport;
+import org.springframework.batch.core.step.item.Chunk;
+import org.springframework.messaging.core.GenericMessagingTemplate;
+
+import io.peltas.core.batch.MessageContext.MessageContextHolder;
+
+public class PeltasChunkProcessorTest {
+
+	@Test
+	public void chunkProcessedConcurrentlyWrittenInOrder() throws Exception {
+		GenericMessagingTemplate template = mock(GenericMessagingTemplate.class);
+		Set<String> threads = ConcurrentHashMap.newKeySet();
+		CountDownLatch started = new CountDownLatch(3);
+		CountDownLatch othersCompleted = new CountDownLatch(2);
+
+		PeltasItemProcessor<String, String> processor = new PeltasItemProcessor<String, String>(template) {
+			@Override
+			protected boolean shouldSkipItem(String item) {
+				return item.equals("skipped");
+			}
+		};
+		processor.setDirectDispatcher(new PeltasDirectDispatcher<String>(message -> "direct").handler("direct",
+				message -> {
+					threads.add(Thread.currentThread().getName());
+					started.countDown();
+					try {
+						// the items are processed together, the first one completes last
+						assertTrue(started.await(5, TimeUnit.SECONDS));
+						if (message.getPayload().equals("a")) {
+							assertTrue(othersCompleted.await(5, TimeUnit.SECONDS));
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					assertNotNull(MessageContextHolder.getMessageContext(message.getHeaders().get("peltas.stack.id")));
+					if (!message.getPayload().equals("a")) {
+						othersCompleted.countDown();
+					}
+					return "direct:" + message.getPayload();
+				}));
+
+		List<String> processed = new ArrayList<>();
+		List<String> written = new ArrayList<>();
+		PeltasChunkProcessor<String, String> chunkProcessor = new PeltasChunkProcessor<>(processor,
+				items -> written.addAll(items));
+		chunkProcessor.registerListener(new ItemListenerSupport<String, String>() {
+			@Override
+			public void beforeProcess(String item) {
+				processed.add(item);
+			}
+		});
+		ExecutorService taskExecutor = Executors.newFixedThreadPool(3);
+		chunkProcessor.setTaskExecutor(taskExecutor);
+
+		StepContribution contribution = new StepExecution("test", null).createStepContribution();
+		try {
+			chunkProcessor.process(contribution, new Chunk<>(Arrays.asList("a", "b", "skipped", "c")));
+		} finally {
+			taskExecutor.shutdown();
+		}
+
+		assertEquals(Arrays.asList("a", "b", "skipped", "c"), processed);
+		assertEquals(Arrays.asList("direct:a", "direct:b", "direct:c"), written);
+		assertEquals(3, threads.size());
+		assertEquals(1, contribution.getFilterCount());
+	}
+
+	@Test
+	public void processErrorReportedForTheFailedItemOnly() throws Exception {
+		PeltasItemProcessor<String, String> processor = new PeltasItemProcessor<String, String>(
+				mock(GenericMessagingTemplate.class)) {
+		};
+		processor.setDirectDispatcher(new PeltasDirectDispatcher<String>(message -> "direct").handler("direct",
+				message -> {
+					if (message.getPayload().equals("b")) {
+						throw new IllegalStateException("b failed");
+					}
+					return "direct:" + message.getPayload();
+				}));
+
+		List<String> failed = new CopyOnWriteArrayList<>();
+		PeltasChunkProcessor<String, String> chunkProcessor = new PeltasChunkProcessor<>(processor, items -> {
+		});
+		chunkProcessor.registerListener(new ItemListenerSupport<String, String>() {
+			@Override
+			public void onProcessError(String item, Exception e) {
+				failed.add(item);
+			}
+		});
+		ExecutorService taskExecutor = Executors.newFixedThreadPool(3);
+		chunkProcessor.setTaskExecutor(taskExecutor);
+
+		StepContribution contribution = new StepExecution("test", null).createStepContribution();
+		try {
+			assertThrows(Exception.class,
+					() -> chunkProcessor.process(contribution, new Chunk<>(Arrays.asList("a", "b", "c"))));
+		} finally {
+			taskExecutor.shutdown();
+		}
+
+		// a and c were processed
+		assertEquals(Arrays.asList("b"), failed);
+	}
+}
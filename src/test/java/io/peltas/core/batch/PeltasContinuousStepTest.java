@@ -0,0 +1,150 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.batch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.listener.ChunkListenerSupport;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.MapJobRepositoryFactoryBean;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class PeltasContinuousStepTest {
+
+	@Test
+	public void chunksCommittedOnceCaughtUpUntilStopped() throws Exception {
+		ResourcelessTransactionManager transactionManager = new ResourcelessTransactionManager();
+		JobRepository jobRepository = new MapJobRepositoryFactoryBean(transactionManager).getObject();
+
+		// every open polls the next batch of entries
+		Deque<List<String>> polls = new LinkedList<>(Arrays.asList(Arrays.asList("a", "b", "c"),
+				Collections.<String>emptyList(), Arrays.asList("d")));
+		PeltasItemReader<String> delegate = new PeltasItemReader<String>("app") {
+			@Override
+			protected void onOpen() {
+				setList(polls.isEmpty() ? null : polls.poll());
+			}
+		};
+		PeltasContinuousItemReader<String> reader = new PeltasContinuousItemReader<>(delegate, 10);
+
+		List<List<String>> written = new ArrayList<>();
+		Step step = new StepBuilderFactory(jobRepository, transactionManager).get("continuous")
+				.<String, String>chunk(new PeltasContinuousCompletionPolicy(reader, 10, 60000)).reader(reader)
+				.writer(items -> {
+					written.add(new ArrayList<>(items));
+					if (items.contains("d")) {
+						reader.stop();
+					}
+				}).repository(new PeltasPeriodicJobRepository(jobRepository, 60000)).build();
+
+		JobExecution jobExecution = jobRepository.createJobExecution("continuous", new JobParameters());
+		StepExecution stepExecution = jobExecution.createStepExecution("continuous");
+		jobRepository.add(stepExecution);
+		step.execute(stepExecution);
+
+		assertEquals(BatchStatus.COMPLETED, stepExecution.getStatus());
+		assertEquals(Arrays.asList(Arrays.asList("a", "b", "c"), Arrays.asList("d")), written);
+		assertEquals(4, jobRepository.getLastStepExecution(jobExecution.getJobInstance(), "continuous")
+				.getWriteCount());
+		// the empty poll ends its own chunk, the last one ends the step
+		assertEquals(4, stepExecution.getCommitCount());
+	}
+
+	@Test
+	public void idleStepSeesStopRequestedThroughJobRepository() throws Exception {
+		ResourcelessTransactionManager transactionManager = new ResourcelessTransactionManager();
+		JobRepository jobRepository = new MapJobRepositoryFactoryBean(transactionManager).getObject();
+		JobExecution jobExecution = jobRepository.createJobExecution("continuous", new JobParameters());
+
+		List<Boolean> pollsInTransaction = new ArrayList<>();
+		PeltasItemReader<String> delegate = new PeltasItemReader<String>("app") {
+			@Override
+			protected void onOpen() {
+				pollsInTransaction.add(TransactionSynchronizationManager.isActualTransactionActive());
+				if (pollsInTransaction.size() == 3) {
+					jobExecution.setStatus(BatchStatus.STOPPING);
+				}
+				setList(Collections.<String>emptyList());
+			}
+		};
+		PeltasContinuousItemReader<String> reader = new PeltasContinuousItemReader<>(delegate, 10);
+		List<Boolean> waitsInTransaction = new ArrayList<>();
+
+		Step step = new StepBuilderFactory(jobRepository, transactionManager).get("continuous")
+				.<String, String>chunk(new PeltasContinuousCompletionPolicy(reader, 10, 60000)).reader(reader)
+				.writer(items -> {
+				}).listener(new ChunkListenerSupport() {
+					@Override
+					public void afterChunk(ChunkContext context) {
+						waitsInTransaction.add(TransactionSynchronizationManager.isActualTransactionActive());
+					}
+				}).repository(new PeltasPeriodicJobRepository(jobRepository, 0)).build();
+
+		StepExecution stepExecution = jobExecution.createStepExecution("continuous");
+		jobRepository.add(stepExecution);
+		step.execute(stepExecution);
+
+		assertEquals(BatchStatus.STOPPED, stepExecution.getStatus());
+		// opened with the step, then polled in the transaction of each empty chunk
+		assertEquals(Arrays.asList(false, true, true), pollsInTransaction);
+		assertEquals(Arrays.asList(false, false), waitsInTransaction);
+		assertEquals(2, stepExecution.getCommitCount());
+	}
+
+	@Test
+	public void runningStepProgressWrittenPeriodically() {
+		JobRepository delegate = mock(JobRepository.class);
+		PeltasPeriodicJobRepository jobRepository = new PeltasPeriodicJobRepository(delegate, 60000);
+
+		JobExecution jobExecution = new JobExecution(new JobInstance(1L, "continuous"), 1L, new JobParameters(),
+				null);
+		StepExecution stepExecution = jobExecution.createStepExecution("continuous");
+		stepExecution.setId(1L);
+		stepExecution.setStatus(BatchStatus.STARTED);
+		for (int i = 0; i < 3; i++) {
+			jobRepository.update(stepExecution);
+			jobRepository.updateExecutionContext(stepExecution);
+		}
+		verify(delegate, times(1)).update(stepExecution);
+		verify(delegate, times(1)).updateExecutionContext(stepExecution);
+
+		stepExecution.setStatus(BatchStatus.COMPLETED);
+		jobRepository.update(stepExecution);
+		jobRepository.updateExecutionContext(stepExecution);
+		verify(delegate, times(2)).update(stepExecution);
+		verify(delegate, times(2)).updateExecutionContext(stepExecution);
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.peltas.core.batch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.sql.Timestamp;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import io.peltas.core.alfresco.PeltasException;
+
+public class PeltasCopyStatementTest {
+
+	@Test
+	public void insertIsCopied() {
+		PeltasCopyStatement statement = PeltasCopyStatement.parse(
+				"insert into batch_bi_case_action (case_id, type, \"user\", \"time\") values(:batch_bi_case.id, :type, :audit.user, :audit.time)");
+
+		assertThat(statement.getCopySql())
+				.isEqualTo("COPY batch_bi_case_action (case_id, type, \"user\", \"time\") FROM STDIN");
+
+		Timestamp time = Timestamp.valueOf("2018-06-14 13:44:58.123");
+		StringBuilder rows = new StringBuilder();
+		statement.appendRow(rows, new MapSqlParameterSource("batch_bi_case.id", 1)
+				.addValue("type", "cm:content\tdraft\\1\n").addValue("audit.user", null).addValue("audit.time", time));
+		// with the offset, whatever the zone of the database session
+		ZoneOffset offset = ZoneId.systemDefault().getRules().getOffset(time.toInstant());
+		assertThat(rows.toString()).isEqualTo("1\tcm:content\\tdraft\\\\1\\n\t\\N\t2018-06-14 13:44:58.123000"
+				+ (offset.getTotalSeconds() == 0 ? "+00:00" : offset.getId()) + "\n");
+
+		assertThatThrownBy(() -> statement.appendRow(new StringBuilder(), new MapSqlParameterSource("type", "x")))
+				.isInstanceOf(IllegalArgumentException.class).hasMessageContaining("batch_bi_case.id");
+	}
+
+	@Test
+	public void onlyNamedParameterInsertsAreCopied() {
+		assertThatThrownBy(() -> PeltasCopyStatement.parse("update node set name = :name"))
+				.isInstanceOf(PeltasException.class);
+		assertThatThrownBy(() -> PeltasCopyStatement.parse("insert into node (name, created) values(:name, now())"))
+				.isInstanceOf(PeltasException.class);
+	}
+}
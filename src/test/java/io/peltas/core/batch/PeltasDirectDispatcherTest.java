@@ -0,0 +1,107 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.batch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.step.item.Chunk;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.core.GenericMessagingTemplate;
+import org.springframework.messaging.support.GenericMessage;
+
+public class PeltasDirectDispatcherTest {
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void itemsHandledWithoutMessaging() throws Exception {
+		GenericMessagingTemplate template = mock(GenericMessagingTemplate.class);
+		Message<?> reply = new GenericMessage<>("custom:b");
+		when(template.sendAndReceive(eq("custom"), any(Message.class))).thenAnswer(invocation -> reply);
+
+		PeltasItemProcessor<String, String> processor = new PeltasItemProcessor<String, String>(template) {
+			@Override
+			protected boolean shouldSkipPayload(String item) {
+				return item.startsWith("skip");
+			}
+		};
+		processor.setDirectDispatcher(new PeltasDirectDispatcher<String>(
+				message -> message.getPayload().equals("b") ? "custom" : "direct")
+						.handler("direct", message -> message.getPayload().equals("c") ? "skip"
+								: "direct:" + message.getPayload() + ":"
+										+ message.getHeaders().get("peltas.stack.id")));
+
+		assertEquals("direct:a:1", processor.process("a"));
+		// not handled directly, sent to its channel
+		assertEquals("custom:b", processor.process("b"));
+		assertNull(processor.process("c"));
+
+		verify(template, never()).sendAndReceive(eq("peltas.entry"), any(Message.class));
+	}
+
+	@Test
+	public void chunkHandledOncePerChannelInOrder() throws Exception {
+		GenericMessagingTemplate template = mock(GenericMessagingTemplate.class);
+		List<List<String>> calls = new ArrayList<>();
+
+		PeltasItemProcessor<String, String> processor = new PeltasItemProcessor<String, String>(template) {
+			@Override
+			protected boolean shouldSkipItem(String item) {
+				return item.equals("skipped");
+			}
+		};
+		processor.setDirectDispatcher(
+				new PeltasDirectDispatcher<String>(message -> message.getPayload().startsWith("a") ? "a" : "b")
+						.chunkHandler("a", messages -> handle(calls, messages, "A"))
+						.chunkHandler("b", messages -> handle(calls, messages, "B")));
+
+		List<String> written = new ArrayList<>();
+		PeltasChunkProcessor<String, String> chunkProcessor = new PeltasChunkProcessor<>(processor,
+				items -> written.addAll(items));
+
+		StepContribution contribution = new StepExecution("test", null).createStepContribution();
+		chunkProcessor.process(contribution, new Chunk<>(Arrays.asList("a1", "b1", "skipped", "a2", "b2")));
+
+		assertEquals(Arrays.asList(Arrays.asList("a1", "a2"), Arrays.asList("b1", "b2")), calls);
+		assertEquals(Arrays.asList("A:a1", "B:b1", "A:a2", "B:b2"), written);
+		assertEquals(1, contribution.getFilterCount());
+		verify(template, never()).sendAndReceive(any(String.class), any(Message.class));
+	}
+
+	private static List<?> handle(List<List<String>> calls, List<Message<String>> messages, String handler) {
+		List<String> payloads = new ArrayList<>();
+		List<String> replies = new ArrayList<>();
+		for (Message<String> message : messages) {
+			payloads.add(message.getPayload());
+			replies.add(handler + ":" + message.getPayload());
+		}
+		calls.add(payloads);
+		return replies;
+	}
+}
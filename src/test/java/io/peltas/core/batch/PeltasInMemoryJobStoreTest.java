@@ -0,0 +1,116 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.batch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.explore.support.SimpleJobExplorer;
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.SimpleJobRepository;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+
+public class PeltasInMemoryJobStoreTest {
+
+	@Test
+	public void keepsLastExecutionsOfEveryJob() throws Exception {
+		PeltasInMemoryJobStore store = new PeltasInMemoryJobStore(3, 0);
+		JobRepository jobRepository = new SimpleJobRepository(store, store, store, store);
+		JobExplorer jobExplorer = new SimpleJobExplorer(store, store, store, store);
+
+		SimpleJobLauncher launcher = new SimpleJobLauncher();
+		launcher.setJobRepository(jobRepository);
+		launcher.afterPropertiesSet();
+
+		Job job = job(jobRepository, "audit");
+		Job other = job(jobRepository, "backfill");
+
+		JobExecution first = null;
+		JobExecution last = null;
+		for (long i = 0; i < 10; i++) {
+			last = launcher.run(job, parameters(i));
+			if (first == null) {
+				first = last;
+			}
+			assertEquals(BatchStatus.COMPLETED, last.getStatus());
+		}
+		launcher.run(other, parameters(0));
+
+		assertEquals(4, store.size());
+		assertEquals(3, jobExplorer.getJobInstanceCount("audit"));
+		assertEquals(1, jobExplorer.getJobInstanceCount("backfill"));
+		assertNull(jobExplorer.getJobExecution(first.getId()));
+		assertNull(jobRepository.getLastJobExecution("audit", parameters(0)));
+
+		JobExecution kept = jobExplorer.getJobExecution(last.getId());
+		assertEquals(1, kept.getStepExecutions().size());
+		assertEquals(1, kept.getStepExecutions().iterator().next().getCommitCount());
+		assertNotNull(jobRepository.getLastStepExecution(last.getJobInstance(), "step"));
+		assertEquals(Arrays.asList("audit", "backfill"), jobExplorer.getJobNames());
+	}
+
+	@Test
+	public void purgesExpiredButNotUnfinishedExecutions() throws Exception {
+		PeltasInMemoryJobStore store = new PeltasInMemoryJobStore(0, 50);
+		JobRepository jobRepository = new SimpleJobRepository(store, store, store, store);
+
+		JobExecution unfinished = jobRepository.createJobExecution("audit", parameters(0));
+		JobExecution finished = jobRepository.createJobExecution("audit", parameters(1));
+		finished.setStatus(BatchStatus.COMPLETED);
+		finished.setEndTime(new Date());
+		jobRepository.update(finished);
+
+		Thread.sleep(100);
+		JobExecution current = jobRepository.createJobExecution("audit", parameters(2));
+
+		List<JobExecution> executions = Arrays.asList(store.getJobExecution(unfinished.getId()),
+				store.getJobExecution(finished.getId()), store.getJobExecution(current.getId()));
+		assertEquals(unfinished, executions.get(0));
+		assertNull(executions.get(1));
+		assertEquals(current, executions.get(2));
+		assertEquals(2, store.size());
+		assertNull(jobRepository.getLastJobExecution("audit", parameters(1)));
+	}
+
+	private Job job(JobRepository jobRepository, String name) {
+		StepBuilderFactory steps = new StepBuilderFactory(jobRepository, new ResourcelessTransactionManager());
+		return new JobBuilderFactory(jobRepository).get(name)
+				.start(steps.get("step").tasklet((contribution, chunkContext) -> {
+					chunkContext.getStepContext().getStepExecution().getExecutionContext().putLong("read", 1);
+					return RepeatStatus.FINISHED;
+				}).build()).build();
+	}
+
+	private JobParameters parameters(long id) {
+		return new JobParametersBuilder().addLong("auditId", id).toJobParameters();
+	}
+}
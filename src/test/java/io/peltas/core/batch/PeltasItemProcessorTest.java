@@ -0,0 +1,127 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.batch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.core.GenericMessagingTemplate;
+
+public class PeltasItemProcessorTest {
+
+	@Test
+	public void itemsProcessedInKeyOrderedLanes() throws Exception {
+		GenericMessagingTemplate template = mock(GenericMessagingTemplate.class);
+		Map<String, List<String>> handled = new ConcurrentHashMap<>();
+		// the items of the nodes 1 and 2, the first item of node 0 completes after them
+		CountDownLatch othersCompleted = new CountDownLatch(3);
+
+		PeltasItemProcessor<String, String> processor = new PeltasItemProcessor<String, String>(template) {
+		};
+		processor.setDirectDispatcher(new PeltasDirectDispatcher<String>(message -> "direct").handler("direct",
+				message -> {
+					String item = message.getPayload();
+					if (item.equals("fail")) {
+						throw new IllegalStateException(item);
+					}
+					String node = item.split(":")[0];
+					if (item.equals("0:1")) {
+						await(othersCompleted);
+					}
+					handled.computeIfAbsent(node, k -> new CopyOnWriteArrayList<>()).add(item);
+					if (!node.equals("0")) {
+						othersCompleted.countDown();
+					}
+					return "direct:" + item;
+				}));
+
+		ExecutorService taskExecutor = Executors.newFixedThreadPool(4);
+		try {
+			// integer keys hash onto the lanes 0, 1 and 2
+			List<String> items = Arrays.asList("0:1", "1:1", "0:2", "2:1", "1:2", "0:3");
+			List<String> processed = processor.processInLanes(items, taskExecutor, 4,
+					item -> Integer.valueOf(item.split(":")[0]));
+
+			assertEquals(Arrays.asList("direct:0:1", "direct:1:1", "direct:0:2", "direct:2:1", "direct:1:2",
+					"direct:0:3"), processed);
+			assertEquals(Arrays.asList("0:1", "0:2", "0:3"), handled.get("0"));
+			assertEquals(Arrays.asList("1:1", "1:2"), handled.get("1"));
+
+			handled.clear();
+			IllegalStateException error = assertThrows(IllegalStateException.class,
+					() -> processor.processInLanes(Arrays.asList("1:1", "fail", "1:2"), taskExecutor, 2,
+							item -> item.equals("fail") ? 0 : Integer.valueOf(item.split(":")[0])));
+			assertEquals("fail", error.getMessage());
+			assertEquals(Arrays.asList("1:1", "1:2"), handled.get("1"));
+		} finally {
+			taskExecutor.shutdown();
+		}
+	}
+
+	@Test
+	public void itemsWithoutKeyProcessedInOneLane() throws Exception {
+		GenericMessagingTemplate template = mock(GenericMessagingTemplate.class);
+		List<String> handled = new CopyOnWriteArrayList<>();
+		CountDownLatch keyedCompleted = new CountDownLatch(1);
+
+		PeltasItemProcessor<String, String> processor = new PeltasItemProcessor<String, String>(template) {
+		};
+		processor.setDirectDispatcher(new PeltasDirectDispatcher<String>(message -> "direct").handler("direct",
+				message -> {
+					String item = message.getPayload();
+					if (item.equals("a")) {
+						// the keyless items wait in their lane behind the first one
+						await(keyedCompleted);
+					}
+					handled.add(item);
+					if (item.equals("keyed")) {
+						keyedCompleted.countDown();
+					}
+					return item;
+				}));
+
+		ExecutorService taskExecutor = Executors.newFixedThreadPool(4);
+		try {
+			processor.processInLanes(Arrays.asList("a", "b", "keyed", "c"), taskExecutor, 4,
+					item -> item.equals("keyed") ? 1 : null);
+		} finally {
+			taskExecutor.shutdown();
+		}
+
+		assertEquals(Arrays.asList("keyed", "a", "b", "c"), handled);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.peltas.core.batch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+
+public class PeltasMultiRowInsertTest {
+
+	@Test
+	public void singleRowInsertIsCoalesced() {
+		PeltasMultiRowInsert insert = PeltasMultiRowInsert.parse(
+				"insert into batch_bi_case (path, creator, created) values(:path, lower(:user), :audit.time);", null);
+
+		String row = NamedParameterUtils.substituteNamedParameters(insert.getRow(), new MapSqlParameterSource());
+		assertThat(row).isEqualTo("(?, lower(?), ?)");
+		assertThat(insert.getSql(row, 3)).isEqualTo(
+				"insert into batch_bi_case (path, creator, created) values(?, lower(?), ?), (?, lower(?), ?), (?, lower(?), ?) returning *");
+	}
+
+	@Test
+	public void returningClauseIsKept() {
+		PeltasMultiRowInsert insert = PeltasMultiRowInsert.parse("INSERT INTO node (uuid) VALUES (:uuid) RETURNING id",
+				"uuid");
+		assertThat(insert.getSql("(?)", 2)).isEqualTo("INSERT INTO node (uuid) VALUES (?), (?) RETURNING id");
+
+		insert = PeltasMultiRowInsert.parse("insert into node (uuid, name) values (:uuid, ')')", "id, uuid");
+		assertThat(insert.getSql("(?, ')')", 2)).isEqualTo(
+				"insert into node (uuid, name) values (?, ')'), (?, ')') returning id, uuid");
+	}
+
+	@Test
+	public void onConflictInsertIsNotCoalesced() {
+		assertThat(PeltasMultiRowInsert
+				.parse("INSERT INTO node (uuid) VALUES (:uuid) ON CONFLICT DO NOTHING RETURNING id", "uuid")).isNull();
+		assertThat(PeltasMultiRowInsert.parse("insert into node (uuid) values (:uuid) on conflict (uuid) do nothing",
+				null)).isNull();
+	}
+
+	@Test
+	public void otherStatementsAreNotCoalesced() {
+		assertThat(PeltasMultiRowInsert.parse("select id from node where uuid = :uuid", null)).isNull();
+		assertThat(PeltasMultiRowInsert.parse("insert into node (uuid) values (:a), (:b)", null)).isNull();
+		assertThat(PeltasMultiRowInsert.parse("insert into node (uuid) select uuid from tmp where id = :id", null))
+				.isNull();
+		assertThat(PeltasMultiRowInsert
+				.parse("insert into node (uuid) values (:uuid) on conflict (uuid) do update set name = :name", null))
+						.isNull();
+	}
+}
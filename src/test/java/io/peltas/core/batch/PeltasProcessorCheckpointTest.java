@@ -0,0 +1,128 @@
+/**
+ * Copyright 2019 Pleo Soft d.o.o. (pleosoft.com)
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.peltas.core.batch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.messaging.core.GenericMessagingTemplate;
+
+import io.peltas.core.alfresco.PeltasEntry;
+import io.peltas.core.repository.PeltasJdbcCheckpointStore;
+import io.peltas.core.repository.PeltasTimestamp;
+import io.peltas.core.repository.PeltasTimestampRepository;
+
+public class PeltasProcessorCheckpointTest {
+
+	@Test
+	public void checkpointLoadedOncePerStep() throws Exception {
+		PeltasTimestampRepository repository = mock(PeltasTimestampRepository.class);
+		when(repository.findTopByApplicationNameOrderByAccessDesc("app"))
+				.thenReturn(new PeltasTimestamp("app", "10___3", new Date()));
+		when(repository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+		List<Integer> checked = new ArrayList<>();
+		PeltasProcessor processor = new PeltasProcessor("app", mock(GenericMessagingTemplate.class), repository) {
+			@Override
+			protected void checkNodesCount(Integer nodesCount) {
+				checked.add(nodesCount);
+			}
+		};
+
+		StepExecution stepExecution = new StepExecution("test", null);
+		processor.beforeStep(stepExecution);
+		chunk(processor, stepExecution, "11", 2);
+		chunk(processor, stepExecution, "12", 0);
+		verify(repository, times(1)).findTopByApplicationNameOrderByAccessDesc("app");
+
+		// reloaded after a failed chunk
+		ChunkContext failed = new ChunkContext(new StepContext(stepExecution));
+		processor.beforeChunk(failed);
+		processor.afterChunkError(failed);
+		chunk(processor, stepExecution, "13", 0);
+		verify(repository, times(2)).findTopByApplicationNameOrderByAccessDesc("app");
+
+		// and by the next run
+		processor.beforeStep(stepExecution);
+		chunk(processor, stepExecution, "14", 0);
+		verify(repository, times(3)).findTopByApplicationNameOrderByAccessDesc("app");
+
+		assertEquals(3, checked.get(0).intValue());
+		assertEquals(5, checked.get(1).intValue());
+
+		ArgumentCaptor<PeltasTimestamp> saved = ArgumentCaptor.forClass(PeltasTimestamp.class);
+		verify(repository, times(4)).save(saved.capture());
+		assertEquals("11___5", saved.getAllValues().get(0).getRef());
+		assertEquals("12___5", saved.getAllValues().get(1).getRef());
+	}
+
+	@Test
+	public void checkpointUpsertedWithJdbc() throws Exception {
+		NamedParameterJdbcTemplate jdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+		PeltasProcessor processor = new PeltasProcessor("app", mock(GenericMessagingTemplate.class),
+				new PeltasJdbcCheckpointStore(jdbcTemplate));
+
+		StepExecution stepExecution = new StepExecution("test", null);
+		processor.beforeStep(stepExecution);
+		chunk(processor, stepExecution, "11", 2);
+		chunk(processor, stepExecution, "12", 3);
+
+		ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+		ArgumentCaptor<MapSqlParameterSource> parameters = ArgumentCaptor.forClass(MapSqlParameterSource.class);
+		verify(jdbcTemplate, times(2)).update(sql.capture(), parameters.capture());
+		assertTrue(sql.getValue().contains("on conflict (application_name) do update"));
+		assertEquals("app", parameters.getValue().getValue("applicationName"));
+		assertEquals(11L, parameters.getAllValues().get(0).getValue("lastId"));
+		assertEquals(2L, parameters.getAllValues().get(0).getValue("processed"));
+		// the running total over the chunks
+		assertEquals(12L, parameters.getValue().getValue("lastId"));
+		assertEquals(5L, parameters.getValue().getValue("processed"));
+		verify(jdbcTemplate, times(1)).query(any(String.class), any(MapSqlParameterSource.class),
+				any(RowMapper.class));
+	}
+
+	private static void chunk(PeltasProcessor processor, StepExecution stepExecution, String id, int items) {
+		ChunkContext context = new ChunkContext(new StepContext(stepExecution));
+		processor.beforeChunk(context);
+
+		PeltasEntry entry = new PeltasEntry();
+		entry.setId(id);
+		processor.beforeProcess(entry);
+		for (int i = 0; i < items; i++) {
+			processor.onItemProcessed(entry, null);
+		}
+		processor.afterWrite(Collections.emptyList());
+		processor.afterChunk(context);
+	}
+}